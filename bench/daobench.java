@@ -0,0 +1,129 @@
+// DaoBenchmark.java
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Row mapping in the DB-backed hot paths (menu catalog load, review listings, the
+// joined order-summary query) against an embedded H2 database created from schema.sql
+// and the migrations and seeded with a fixed data set, so runs are reproducible offline.
+// Setup fails if a hot query's plan scans a table (see QueryPlans).
+//
+// H2 comes with the bench/pom.xml build. Runs with DB_MODE=h2-mem unless
+// -DBENCH_DB_MODE=... says otherwise; run from the repository root so schema.sql and
+// migrations/ are found.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DaoBenchmark {
+
+    static final int USERS = 200, MENU_ITEMS = 60, REVIEWS = 5_000, ORDERS = 1_000;
+
+    private final Menu menu = new Menu();
+    private final Review review = new Review();
+    private final OrderSummaryRenderer renderer = new OrderSummaryRenderer();
+    private final List<Integer> orderIds = new ArrayList<>();
+    private int menuItemId;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        // Must happen before DBConnection is first touched
+        System.setProperty("DB_MODE", Config.get("BENCH_DB_MODE", "h2-mem"));
+        System.setProperty("DB_NAME", "canteen_bench");
+        Migrations.migrate(); // DBConnection creates the tables on first use; this adds the indexes
+        seed();
+        QueryPlans.requireIndexed();
+        menuItemId = MENU_ITEMS / 2;
+        for (int i = 1; i <= 50; i++) orderIds.add(i * (ORDERS / 50));
+    }
+
+    // Fixed pseudo-random data (same seed every run)
+    private static void seed() throws Exception {
+        java.util.Random random = new java.util.Random(42);
+        Timestamp base = Timestamp.valueOf("2024-07-01 11:30:00");
+        // Benchmarks run with -f 0 share one JVM, and so one in-memory database
+        if (Dao.queryOne("SELECT COUNT(*) FROM users", Dao.NO_PARAMS, rs -> r -> r.getInt(1)) > 0) return;
+        try (Connection c = Dao.connection()) {
+            c.setAutoCommit(false);
+            try (PreparedStatement ps = c.prepareStatement("INSERT INTO users (name, email, password, wallet) VALUES (?, ?, ?, ?)")) {
+                for (int i = 1; i <= USERS; i++) {
+                    ps.setString(1, "Student " + i);
+                    ps.setString(2, "student" + i + "@college.edu");
+                    ps.setString(3, "x");
+                    ps.setDouble(4, 500);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            try (PreparedStatement ps = c.prepareStatement("INSERT INTO menu_items (name, description, price, available) VALUES (?, ?, ?, ?)")) {
+                for (int i = 1; i <= MENU_ITEMS; i++) {
+                    ps.setString(1, "Item " + i);
+                    ps.setString(2, "Freshly made item number " + i);
+                    ps.setDouble(3, 20 + random.nextInt(180));
+                    ps.setBoolean(4, i % 10 != 0);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            try (PreparedStatement ps = c.prepareStatement("INSERT INTO reviews (user_id, menu_item_id, rating, comment, created_at) VALUES (?, ?, ?, ?, ?)")) {
+                for (int i = 0; i < REVIEWS; i++) {
+                    ps.setInt(1, 1 + random.nextInt(USERS));
+                    ps.setInt(2, 1 + random.nextInt(MENU_ITEMS));
+                    ps.setInt(3, 1 + random.nextInt(5));
+                    ps.setString(4, "Review comment " + i);
+                    ps.setTimestamp(5, new Timestamp(base.getTime() + i * 60_000L));
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            try (PreparedStatement o = c.prepareStatement("INSERT INTO orders (user_id, time_slot, status, total_amount, created_at) VALUES (?, ?, 'PLACED', ?, ?)");
+                 PreparedStatement oi = c.prepareStatement("INSERT INTO order_items (order_id, menu_item_id, quantity, price) VALUES (?, ?, ?, ?)")) {
+                for (int i = 1; i <= ORDERS; i++) {
+                    o.setInt(1, 1 + random.nextInt(USERS));
+                    o.setString(2, "12:" + (i % 4) * 15);
+                    o.setDouble(3, 150);
+                    o.setTimestamp(4, new Timestamp(base.getTime() + i * 30_000L));
+                    o.addBatch();
+                    for (int line = 0; line < 3; line++) {
+                        oi.setInt(1, i); // ids start at 1 on a fresh database
+                        oi.setInt(2, 1 + random.nextInt(MENU_ITEMS));
+                        oi.setInt(3, 1 + line);
+                        oi.setDouble(4, 50);
+                        oi.addBatch();
+                    }
+                }
+                o.executeBatch();
+                oi.executeBatch();
+            }
+            c.commit();
+        }
+    }
+
+    @Benchmark
+    public Object menuCatalogLoad() throws Exception {
+        Menu.invalidateCache();
+        return menu.listMenuItems();
+    }
+
+    @Benchmark
+    public Object reviewPage() throws Exception {
+        return review.getReviewsForMenuItem(menuItemId, null, Review.DEFAULT_PAGE_SIZE);
+    }
+
+    @Benchmark
+    public Object reviewListUnpaged() throws Exception {
+        return review.getReviewsForMenuItem(menuItemId);
+    }
+
+    @Benchmark
+    public Object orderSummaryLoad() throws Exception {
+        return renderer.load(orderIds);
+    }
+}
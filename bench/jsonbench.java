@@ -0,0 +1,63 @@
+// JsonBenchmark.java
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Login request decoding and login response encoding: the streaming JsonCodec path
+// against the old read-lines-into-a-String + Map parsing and toJson + getBytes.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+    private final Gson gson = new Gson();
+    private final JsonCodec codec = new JsonCodec(gson, 64 * 1024);
+    private final byte[] loginBody = "{\"email\":\"asha@college.edu\",\"password\":\"lunch-rush-2024\"}"
+            .getBytes(StandardCharsets.UTF_8);
+    private Map<String, Object> loginResponse;
+
+    @Setup
+    public void setup() {
+        loginResponse = Map.of(
+                "success", true,
+                "token", "q0Jx4cN4mB2yQ9V1s8bKf3m5cQz7dYx2Lr0pA6uW1eE",
+                "user", Map.of("id", 42, "name", "Asha Rao", "email", "asha@college.edu", "wallet", 250.5));
+    }
+
+    @Benchmark
+    public Object decodeStreaming() throws IOException {
+        return codec.read(new StubExchange("POST", "/api/login", loginBody), CanteenAPIService.LoginRequest.class);
+    }
+
+    @Benchmark
+    public Object decodeStringMap() throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(loginBody)));
+        StringBuilder body = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null) body.append(line);
+        return gson.fromJson(body.toString(), Map.class);
+    }
+
+    @Benchmark
+    public long encodeStreaming() throws IOException {
+        StubExchange exchange = new StubExchange("POST", "/api/login");
+        codec.write(exchange, 200, loginResponse);
+        return exchange.bytesWritten;
+    }
+
+    @Benchmark
+    public long encodeStringGetBytes() throws IOException {
+        String response = gson.toJson(loginResponse);
+        StubExchange exchange = new StubExchange("POST", "/api/login");
+        exchange.sendResponseHeaders(200, response.getBytes().length);
+        exchange.getResponseBody().write(response.getBytes());
+        return exchange.bytesWritten;
+    }
+}
@@ -0,0 +1,61 @@
+// PasswordBenchmark.java
+import org.openjdk.jmh.annotations.*;
+
+import java.security.MessageDigest;
+import java.util.concurrent.TimeUnit;
+
+// Password hashing cost: the PBKDF2 scheme at a few iteration counts, verification of
+// legacy SHA-256 rows, and the hex codec against the per-byte String.format it replaced.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PasswordBenchmark {
+
+    @Param({"10000", "100000", "210000"})
+    int iterations;
+
+    private PasswordHasher.Pbkdf2 pbkdf2;
+    private final PasswordHasher.LegacySha256 legacy = new PasswordHasher.LegacySha256();
+    private String pbkdf2Hash, legacyHash;
+    private byte[] digest;
+
+    @Setup
+    public void setup() throws Exception {
+        pbkdf2 = new PasswordHasher.Pbkdf2(iterations);
+        pbkdf2Hash = pbkdf2.hash("lunch-rush-2024");
+        legacyHash = legacy.hash("lunch-rush-2024");
+        digest = MessageDigest.getInstance("SHA-256").digest("lunch-rush-2024".getBytes("UTF-8"));
+    }
+
+    @Benchmark
+    public String pbkdf2Hash() {
+        return pbkdf2.hash("lunch-rush-2024");
+    }
+
+    @Benchmark
+    public boolean pbkdf2Verify() {
+        return pbkdf2.matches("lunch-rush-2024", pbkdf2Hash);
+    }
+
+    @Benchmark
+    public boolean legacyVerify() {
+        return legacy.matches("lunch-rush-2024", legacyHash);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public String hexEncode() {
+        return Hex.encode(digest);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public String hexStringFormat() {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest) sb.append(String.format("%02x", b));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,48 @@
+// StageSources.java
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Build step for the benchmark module. The sources are named in lower case (order.java
+// holds Review), which javac rejects for public types, and live in the default package,
+// which JMH rejects for benchmarks. Each file is copied to canteen/<TopLevelType>.java in
+// the staging directory with "package canteen;" put in front; everything shares the one
+// package, so no imports change. Run once for the main sources and once for the tests.
+//
+// java bench/stagesources.java <staging directory> <source directory>...
+class StageSources {
+
+    private static final String PACKAGE = "canteen";
+
+    private static final Pattern TOP_LEVEL_TYPE =
+            Pattern.compile("^(?:public )?(?:final |abstract )?(?:class|interface|enum|record) (\\w+)", Pattern.MULTILINE);
+
+    public static void main(String[] args) throws IOException {
+        Path staged = Path.of(args[0]).resolve(PACKAGE);
+        Files.createDirectories(staged);
+        int copied = 0;
+        for (int i = 1; i < args.length; i++) {
+            for (Path source : javaFiles(Path.of(args[i]))) {
+                if (source.getFileName().toString().equals("stagesources.java")) continue;
+                String text = Files.readString(source, StandardCharsets.UTF_8);
+                Matcher m = TOP_LEVEL_TYPE.matcher(text);
+                if (!m.find()) throw new IllegalStateException("No top-level type in " + source);
+                Files.writeString(staged.resolve(m.group(1) + ".java"), "package " + PACKAGE + ";\n" + text, StandardCharsets.UTF_8);
+                copied++;
+            }
+        }
+        System.out.println("Staged " + copied + " source files in " + staged);
+    }
+
+    private static List<Path> javaFiles(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(f -> f.getFileName().toString().endsWith(".java")).sorted().collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,50 @@
+// StaticFileBenchmark.java
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+// StaticFileHandler serving the repo's own index.html/script.js/style.css from memory:
+// identity, gzip, and a revalidation that ends in 304.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StaticFileBenchmark {
+
+    @Param({"/index.html", "/script.js", "/style.css"})
+    String path;
+
+    private CanteenAPIService.StaticFileHandler handler;
+    private String etag;
+
+    @Setup
+    public void setup() throws IOException {
+        StaticAssets assets = new StaticAssets(Config.get("WEB_DIR", "."), 3600);
+        handler = new CanteenAPIService.StaticFileHandler(assets);
+        etag = assets.get(path).etag;
+    }
+
+    @Benchmark
+    public long identity() throws IOException {
+        StubExchange exchange = new StubExchange("GET", path);
+        handler.handle(exchange);
+        return exchange.bytesWritten;
+    }
+
+    @Benchmark
+    public long gzip() throws IOException {
+        StubExchange exchange = new StubExchange("GET", path).header("Accept-Encoding", "gzip, deflate");
+        handler.handle(exchange);
+        return exchange.bytesWritten;
+    }
+
+    @Benchmark
+    public int notModified() throws IOException {
+        StubExchange exchange = new StubExchange("GET", path).header("If-None-Match", etag);
+        handler.handle(exchange);
+        return exchange.getResponseCode();
+    }
+}
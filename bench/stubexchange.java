@@ -0,0 +1,72 @@
+// StubExchange.java
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+// In-memory HttpExchange so handlers can be benchmarked without sockets.
+// The response body is counted and discarded.
+class StubExchange extends HttpExchange {
+
+    private final String method;
+    private final URI uri;
+    private final Headers requestHeaders = new Headers();
+    private final Headers responseHeaders = new Headers();
+    private final Map<String, Object> attributes = new HashMap<>();
+    private InputStream requestBody;
+    private int responseCode = -1;
+    long bytesWritten;
+
+    private final OutputStream responseBody = new OutputStream() {
+        @Override
+        public void write(int b) {
+            bytesWritten++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytesWritten += len;
+        }
+    };
+
+    StubExchange(String method, String path) {
+        this(method, path, new byte[0]);
+    }
+
+    StubExchange(String method, String path, byte[] body) {
+        this.method = method;
+        this.uri = URI.create(path);
+        this.requestBody = new ByteArrayInputStream(body);
+    }
+
+    StubExchange header(String name, String value) {
+        requestHeaders.add(name, value);
+        return this;
+    }
+
+    @Override public Headers getRequestHeaders() { return requestHeaders; }
+    @Override public Headers getResponseHeaders() { return responseHeaders; }
+    @Override public URI getRequestURI() { return uri; }
+    @Override public String getRequestMethod() { return method; }
+    @Override public HttpContext getHttpContext() { return null; }
+    @Override public void close() {}
+    @Override public InputStream getRequestBody() { return requestBody; }
+    @Override public OutputStream getResponseBody() { return responseBody; }
+    @Override public void sendResponseHeaders(int rCode, long responseLength) { responseCode = rCode; }
+    @Override public InetSocketAddress getRemoteAddress() { return InetSocketAddress.createUnresolved("bench", 0); }
+    @Override public int getResponseCode() { return responseCode; }
+    @Override public InetSocketAddress getLocalAddress() { return InetSocketAddress.createUnresolved("localhost", 8080); }
+    @Override public String getProtocol() { return "HTTP/1.1"; }
+    @Override public Object getAttribute(String name) { return attributes.get(name); }
+    @Override public void setAttribute(String name, Object value) { attributes.put(name, value); }
+    @Override public void setStreams(InputStream i, OutputStream o) { if (i != null) requestBody = i; }
+    @Override public HttpPrincipal getPrincipal() { return null; }
+}
@@ -0,0 +1,49 @@
+// SummaryRenderBenchmark.java
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+
+// OrderSummaryRenderer output for an order already loaded into a SummaryModel
+// (rendering only; the joined query is covered by DaoBenchmark).
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SummaryRenderBenchmark {
+
+    @Param({"1", "5", "20"})
+    int lines;
+
+    @Param({"TEXT", "HTML", "JSON"})
+    OrderSummaryRenderer.Format format;
+
+    private final OrderSummaryRenderer renderer = new OrderSummaryRenderer();
+    private final StringBuilder out = new StringBuilder(4096);
+    private OrderSummaryRenderer.SummaryModel model;
+
+    @Setup
+    public void setup() {
+        model = new OrderSummaryRenderer.SummaryModel(1001);
+        model.found = true;
+        model.userName = "Asha <Rao>";
+        model.timeSlot = "12:30";
+        model.status = "PLACED";
+        model.createdAt = Timestamp.valueOf("2024-07-15 12:05:31");
+        for (int i = 0; i < lines; i++) {
+            OrderSummaryRenderer.SummaryLine line = new OrderSummaryRenderer.SummaryLine("Masala Dosa \"special\" " + i, 1 + i % 3, 4500 + i * 250);
+            model.lines.add(line);
+            model.grandTotalPaise += line.lineTotalPaise;
+        }
+        model.totalPaise = model.grandTotalPaise;
+    }
+
+    @Benchmark
+    public int render() {
+        out.setLength(0);
+        renderer.render(out, model, format);
+        return out.length();
+    }
+}
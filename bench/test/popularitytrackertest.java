@@ -0,0 +1,142 @@
+// PopularityTrackerTest.java
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.Lock;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+// Orders commit and are recorded from several threads while the tracker seeds or
+// reconciles; afterwards its all-time counters must match a GROUP BY over order_items.
+class PopularityTrackerTest {
+
+    private static final int WRITERS = 8, ORDERS_PER_WRITER = 150, ITEMS = 5;
+
+    private static int userId;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        TestDatabase.init();
+        userId = TestDatabase.insertUser("popularity@test", 0);
+    }
+
+    @Test
+    void seedingWhileOrdersCommitMatchesTheTable() throws Exception {
+        List<Order.OrderLine> menu = menu("seed");
+        PopularityTracker tracker = new PopularityTracker();
+        runWhileOrdersCommit(menu, tracker, () -> tracker.top(PopularityTracker.Window.ALL_TIME, 1));
+        assertEquals(totalsInDatabase(menu), totalsInTracker(menu, tracker));
+    }
+
+    @Test
+    void reconcilingWhileOrdersCommitMatchesTheTable() throws Exception {
+        List<Order.OrderLine> menu = menu("reconcile");
+        PopularityTracker tracker = new PopularityTracker();
+        tracker.top(PopularityTracker.Window.ALL_TIME, 1);
+        runWhileOrdersCommit(menu, tracker, tracker::reconcile);
+        assertEquals(totalsInDatabase(menu), totalsInTracker(menu, tracker));
+    }
+
+    interface Snapshot {
+        void run() throws Exception;
+    }
+
+    // Repeat the snapshot until every writer has finished
+    private static void runWhileOrdersCommit(List<Order.OrderLine> menu, PopularityTracker tracker, Snapshot snapshot) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(WRITERS);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int w = 0; w < WRITERS; w++) {
+                writers.add(pool.submit(() -> {
+                    for (int i = 0; i < ORDERS_PER_WRITER; i++) placeOrder(menu, tracker);
+                    return null;
+                }));
+            }
+            while (!writers.stream().allMatch(Future::isDone)) {
+                snapshot.run();
+                Thread.sleep(2);
+            }
+            for (Future<?> f : writers) f.get();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Commit an order with one to three lines and record it, holding the tracker's
+    // commit lock across both as Order.placeOrder does
+    private static void placeOrder(List<Order.OrderLine> menu, PopularityTracker tracker) throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        List<Order.OrderLine> lines = new ArrayList<>();
+        for (int n = random.nextInt(1, 4); n > 0; n--) {
+            Order.OrderLine item = menu.get(random.nextInt(menu.size()));
+            lines.add(new Order.OrderLine(item.menuItemId, item.name, random.nextInt(1, 4), item.price));
+        }
+        int orderId;
+        Lock recording = tracker.commitLock();
+        recording.lock();
+        try (Connection c = Dao.connection()) {
+            c.setAutoCommit(false);
+            try (PreparedStatement ps = c.prepareStatement(
+                    "INSERT INTO orders (user_id, time_slot, total_amount) VALUES (?, '12:00', 0)", Statement.RETURN_GENERATED_KEYS)) {
+                ps.setInt(1, userId);
+                ps.executeUpdate();
+                try (ResultSet keys = ps.getGeneratedKeys()) {
+                    keys.next();
+                    orderId = keys.getInt(1);
+                }
+            }
+            for (Order.OrderLine line : lines) {
+                Dao.update(c, "INSERT INTO order_items (order_id, menu_item_id, quantity, price) VALUES (?, ?, ?, ?)", ps -> {
+                    ps.setInt(1, orderId);
+                    ps.setInt(2, line.menuItemId);
+                    ps.setInt(3, line.quantity);
+                    ps.setDouble(4, line.price);
+                });
+            }
+            c.commit();
+            tracker.record(orderId, lines);
+        } finally {
+            recording.unlock();
+        }
+    }
+
+    private static List<Order.OrderLine> menu(String prefix) throws Exception {
+        List<Order.OrderLine> menu = new ArrayList<>();
+        for (int i = 0; i < ITEMS; i++) {
+            String name = prefix + "-" + i;
+            menu.add(new Order.OrderLine(TestDatabase.insertMenuItem(name, 50), name, 0, 50));
+        }
+        return menu;
+    }
+
+    // menu item id -> [lines, quantity]
+    private static Map<Integer, List<Integer>> totalsInDatabase(List<Order.OrderLine> menu) throws Exception {
+        Map<Integer, List<Integer>> totals = new HashMap<>();
+        for (Order.OrderLine item : menu) {
+            List<Integer> row = Dao.queryOne("SELECT COUNT(*), SUM(quantity) FROM order_items WHERE menu_item_id = ? GROUP BY menu_item_id",
+                    ps -> ps.setInt(1, item.menuItemId), rs -> r -> List.of(r.getInt(1), r.getInt(2)));
+            if (row != null) totals.put(item.menuItemId, row);
+        }
+        return totals;
+    }
+
+    private static Map<Integer, List<Integer>> totalsInTracker(List<Order.OrderLine> menu, PopularityTracker tracker) throws Exception {
+        Map<Integer, List<Integer>> totals = new HashMap<>();
+        for (OrderSummary.PopularItem item : tracker.top(PopularityTracker.Window.ALL_TIME, 1_000)) {
+            if (menu.stream().anyMatch(m -> m.menuItemId == item.id)) totals.put(item.id, List.of(item.orderCount, item.totalQuantity));
+        }
+        return totals;
+    }
+}
@@ -0,0 +1,74 @@
+// ReviewQueueTest.java
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.Gson;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// A crash after the batch commits but before its "C" mark is written leaves reviews in
+// the journal that are already in the table. Replaying them must not insert them again.
+class ReviewQueueTest {
+
+    private static final int REVIEWS = 50;
+    private static final long TIMEOUT_MS = 10_000;
+
+    @TempDir
+    Path dir;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        TestDatabase.init();
+    }
+
+    @Test
+    void replayingCommittedEntriesInsertsNothing() throws Exception {
+        int userId = TestDatabase.insertUser("reviews@test", 0);
+        int menuItemId = TestDatabase.insertMenuItem("reviewed", 40);
+
+        Path first = dir.resolve("first.journal");
+        ReviewQueue queue = new ReviewQueue(first);
+        for (int i = 0; i < REVIEWS; i++) queue.submit(userId, menuItemId, 1 + i % 5, "review " + i);
+        awaitEmpty(first);
+        assertEquals(REVIEWS, reviewCount(menuItemId));
+        int ratingCount = new Review().getRatingCount(menuItemId);
+
+        // The same reviews, as left in a journal whose commit marks were lost
+        List<ReviewQueue.Pending> stored = Dao.query(
+                "SELECT journal_key, user_id, menu_item_id, rating, comment FROM reviews WHERE menu_item_id = ? ORDER BY id",
+                ps -> ps.setInt(1, menuItemId),
+                rs -> r -> new ReviewQueue.Pending(0, r.getString(1), r.getInt(2), r.getInt(3), r.getInt(4), r.getString(5)));
+        Gson gson = new Gson();
+        List<String> lines = new ArrayList<>();
+        for (ReviewQueue.Pending p : stored) {
+            p.seq = lines.size() + 1;
+            lines.add("R " + gson.toJson(p));
+        }
+        Path replay = dir.resolve("replay.journal");
+        Files.write(replay, lines, StandardCharsets.UTF_8);
+
+        new ReviewQueue(replay).start();
+        awaitEmpty(replay);
+        assertEquals(REVIEWS, reviewCount(menuItemId));
+        assertEquals(ratingCount, new Review().getRatingCount(menuItemId));
+    }
+
+    // The journal is truncated once everything in it is committed
+    private static void awaitEmpty(Path journal) throws Exception {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (Files.size(journal) > 0) {
+            if (System.currentTimeMillis() > deadline) throw new AssertionError("journal " + journal + " was never committed");
+            Thread.sleep(20);
+        }
+    }
+
+    private static int reviewCount(int menuItemId) throws Exception {
+        return Dao.queryOne("SELECT COUNT(*) FROM reviews WHERE menu_item_id = ?", ps -> ps.setInt(1, menuItemId), rs -> r -> r.getInt(1));
+    }
+}
@@ -0,0 +1,37 @@
+// TestDatabase.java
+import java.sql.SQLException;
+
+// One in-memory H2 database for every test in the JVM, bootstrapped from schema.sql
+// and migrated like a real start. Tests create their own users and menu items and
+// only look at those, so they do not depend on running order.
+final class TestDatabase {
+
+    private static boolean ready;
+
+    private TestDatabase() {}
+
+    static synchronized void init() throws Exception {
+        if (ready) return;
+        System.setProperty("DB_MODE", "h2-mem");
+        System.setProperty("DB_NAME", "canteen_test");
+        Migrations.migrate();
+        ready = true;
+    }
+
+    static int insertUser(String email, double wallet) throws SQLException {
+        Dao.update("INSERT INTO users (name, email, password, wallet) VALUES (?, ?, 'x', ?)", ps -> {
+            ps.setString(1, email);
+            ps.setString(2, email);
+            ps.setDouble(3, wallet);
+        });
+        return Dao.queryOne("SELECT id FROM users WHERE email = ?", ps -> ps.setString(1, email), rs -> r -> r.getInt(1));
+    }
+
+    static int insertMenuItem(String name, double price) throws SQLException {
+        Dao.update("INSERT INTO menu_items (name, description, price, available) VALUES (?, '', ?, TRUE)", ps -> {
+            ps.setString(1, name);
+            ps.setDouble(2, price);
+        });
+        return Dao.queryOne("SELECT MAX(id) FROM menu_items WHERE name = ?", ps -> ps.setString(1, name), rs -> r -> r.getInt(1));
+    }
+}
@@ -0,0 +1,79 @@
+// WalletTest.java
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+// Many more debits than the balance covers race on one account, with a few credits
+// landing in between; the committed balance and every ledger row must stay >= 0.
+class WalletTest {
+
+    private static final int THREADS = 16, DEBITS_PER_THREAD = 40;
+    private static final long START_PAISE = 5_000, DEBIT_PAISE = 125, CREDIT_PAISE = 50;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        TestDatabase.init();
+    }
+
+    @Test
+    void concurrentDebitsNeverOverdraw() throws Exception {
+        int userId = TestDatabase.insertUser("wallet@test", START_PAISE / 100.0);
+        Wallet wallet = new Wallet();
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<long[]>> workers = new ArrayList<>();
+        try {
+            for (int t = 0; t < THREADS; t++) {
+                workers.add(pool.submit(() -> {
+                    long debited = 0, credited = 0;
+                    List<CompletableFuture<Wallet.Entry>> committed = new ArrayList<>();
+                    for (int i = 0; i < DEBITS_PER_THREAD; i++) {
+                        try {
+                            committed.add(wallet.debit(userId, DEBIT_PAISE / 100.0, "test", null));
+                            debited += DEBIT_PAISE;
+                        } catch (IllegalStateException insufficient) {
+                            // expected once the balance runs out
+                        }
+                        if (i % 10 == 0) {
+                            committed.add(wallet.credit(userId, CREDIT_PAISE / 100.0, "test", null));
+                            credited += CREDIT_PAISE;
+                        }
+                    }
+                    for (CompletableFuture<Wallet.Entry> f : committed) f.join();
+                    return new long[]{debited, credited};
+                }));
+            }
+            long debited = 0, credited = 0;
+            for (Future<long[]> f : workers) {
+                long[] totals = f.get();
+                debited += totals[0];
+                credited += totals[1];
+            }
+
+            long balance = paise(Dao.queryOne("SELECT wallet FROM users WHERE id = ?", ps -> ps.setInt(1, userId), rs -> r -> r.getDouble(1)));
+            long lowest = paise(Dao.queryOne("SELECT MIN(balance_after) FROM wallet_ledger WHERE user_id = ?", ps -> ps.setInt(1, userId), rs -> r -> r.getDouble(1)));
+            long ledger = paise(Dao.queryOne("SELECT SUM(amount) FROM wallet_ledger WHERE user_id = ?", ps -> ps.setInt(1, userId), rs -> r -> r.getDouble(1)));
+
+            assertTrue(debited > 0 && debited < (long) THREADS * DEBITS_PER_THREAD * DEBIT_PAISE, "some debits should be refused");
+            assertTrue(balance >= 0, "committed balance went negative: " + balance);
+            assertTrue(lowest >= 0, "ledger balance_after went negative: " + lowest);
+            assertEquals(START_PAISE + credited - debited, balance);
+            assertEquals(balance - START_PAISE, ledger);
+            assertEquals(balance, Math.round(wallet.balance(userId) * 100));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static long paise(double amount) {
+        return Math.round(amount * 100);
+    }
+}
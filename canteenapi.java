@@ -1,68 +1,211 @@
 import com.sun.net.httpserver.HttpServer;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpContext;
 import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 
 import java.io.*;
 import java.net.InetSocketAddress;
-import java.nio.file.Files;
-import java.security.MessageDigest;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public class CanteenAPIService {
 
-    private static final int PORT = Integer.parseInt(System.getenv().getOrDefault("PORT", "8080"));
+    private static final int PORT = Config.getInt("PORT", 8080);
     private static final String WEB_DIR = "./"; // All files in the same folder
+    private static final int STATIC_MAX_AGE = Config.getInt("STATIC_MAX_AGE", 300); // seconds, for css/js
     private static final Gson gson = new Gson();
+    private static final JsonCodec json = new JsonCodec(gson, Config.getLong("HTTP_MAX_BODY_BYTES", 64 * 1024));
+    private static RequestExecutor requestExecutor;
+    private static final SessionStore.SessionFilter sessionFilter = new SessionStore.SessionFilter(SessionStore.shared());
+    private static final RequestExecutor.OverloadFilter overloadFilter = new RequestExecutor.OverloadFilter();
+    private static final String KITCHEN_KEY = Config.get("KITCHEN_KEY", "");
 
     public static void main(String[] args) throws IOException {
         startServer();
     }
 
     public static void startServer() throws IOException {
+        // Loads the driver and, in the embedded modes, creates the tables. Throws before
+        // the port is bound if that fails, as do the migrations and the plan check.
+        DBConnection.Mode mode = DBConnection.mode();
+        if (Config.getBoolean("MIGRATE_ON_START", true)) {
+            try {
+                Migrations.migrate();
+            } catch (SQLException | IOException e) {
+                throw new IllegalStateException("Schema migration failed: " + e.getMessage(), e);
+            }
+        }
+        if (Config.getBoolean("VERIFY_QUERY_PLANS", mode.embedded())) {
+            try {
+                QueryPlans.requireIndexed();
+            } catch (SQLException e) {
+                throw new IllegalStateException("Could not check query plans: " + e.getMessage(), e);
+            }
+        }
+
         HttpServer server = HttpServer.create(new InetSocketAddress(PORT), 0);
 
-        // Serve static files (HTML, CSS, JS)
-        server.createContext("/", new StaticFileHandler());
+        // Serve static files (HTML, CSS, JS) from memory, reloading them when they change on disk
+        StaticAssets assets = new StaticAssets(WEB_DIR, STATIC_MAX_AGE);
+        assets.watch();
+        server.createContext("/", Metrics.instrument("static", new StaticFileHandler(assets))).getFilters().add(overloadFilter);
+
+        // API endpoints (the session filter attaches the logged-in User, if any)
+        apiContext(server, "/api/login", new LoginHandler());
+        apiContext(server, "/api/logout", new LogoutHandler());
+        apiContext(server, "/api/register", new RegisterHandler());
+        apiContext(server, "/api/menu", new MenuHandler());
+        apiContext(server, "/api/orders", new OrderHandler());
+        apiContext(server, "/api/orders/cancel", new CancelOrderHandler());
+        apiContext(server, "/api/orders/status", new OrderStatusHandler());
+        apiContext(server, "/api/orders/events", new OrderEventsHandler());
+        apiContext(server, "/api/slots", new SlotsHandler());
+        apiContext(server, "/api/reviews", new ReviewsHandler());
+        apiContext(server, "/api/reviews/stream", new ReviewStreamHandler());
+        apiContext(server, "/api/popular", new PopularHandler());
+        apiContext(server, "/api/payments", new PaymentHandler());
+        apiContext(server, "/api/wallet", new WalletHandler());
+        server.createContext("/metrics", new MetricsHandler()).getFilters().add(overloadFilter);
+        registerGauges();
 
-        // API endpoints
-        server.createContext("/api/login", new LoginHandler());
-        server.createContext("/api/register", new RegisterHandler());
+        try {
+            RevenueRollup.backfillIfEmpty();
+        } catch (Exception e) {
+            System.err.println("Revenue rollup backfill failed: " + e.getMessage());
+        }
+        try {
+            ReviewQueue.shared().start(); // replays reviews left in the journal
+        } catch (IOException e) {
+            System.err.println("Review journal unavailable: " + e.getMessage());
+        }
 
-        server.setExecutor(null);
+        // Handlers do blocking JDBC work, so keep them off the dispatcher thread
+        requestExecutor = RequestExecutor.fromConfig();
+        server.setExecutor(requestExecutor);
         server.start();
-        System.out.println("Server started on port " + PORT);
+        System.out.println("Server started on port " + PORT + " (" + requestExecutor.stats().mode + " request threads)");
+    }
+
+    private static void apiContext(HttpServer server, String path, HttpHandler handler) {
+        apiContext(server.createContext(path, Metrics.instrument(path, handler)));
+    }
+
+    private static void apiContext(HttpServer server, String path, Metrics.AsyncHandler handler) {
+        apiContext(server.createContext(path, Metrics.instrumentAsync(path, handler)));
+    }
+
+    private static void apiContext(HttpContext context) {
+        context.getFilters().add(overloadFilter);
+        context.getFilters().add(sessionFilter);
+    }
+
+    public static RequestExecutor.Stats requestExecutorStats() {
+        return requestExecutor == null ? null : requestExecutor.stats();
+    }
+
+    private static void registerGauges() {
+        Metrics.gauge("canteen_db_pool_active", "Connections lent out", () -> DBConnection.poolStats().active);
+        Metrics.gauge("canteen_db_pool_idle", "Idle pooled connections", () -> DBConnection.poolStats().idle);
+        Metrics.gauge("canteen_db_pool_max", "Pool size limit", () -> DBConnection.poolStats().maxSize);
+        Metrics.gauge("canteen_db_pool_waiters", "Threads waiting for a connection", () -> DBConnection.poolStats().waiters);
+        Metrics.gauge("canteen_db_pool_timeouts", "Borrow timeouts since start", () -> DBConnection.poolStats().timeouts);
+        Metrics.gauge("canteen_db_pool_created", "Connections opened since start", () -> DBConnection.poolStats().created);
+        Metrics.gauge("canteen_db_statement_cache_hits", "Prepared statements reused from the cache", () -> DBConnection.poolStats().statementHits);
+        Metrics.gauge("canteen_db_statement_cache_misses", "Prepared statements parsed anew", () -> DBConnection.poolStats().statementMisses);
+        Metrics.gauge("canteen_http_in_flight", "Requests being handled", () -> requestExecutorStats().inFlight);
+        Metrics.gauge("canteen_http_in_flight_max", "In-flight request limit", () -> requestExecutorStats().maxInFlight);
+        Metrics.gauge("canteen_http_queued", "Requests waiting for a slot", () -> requestExecutorStats().queued);
+        Metrics.gauge("canteen_http_completed", "Requests completed since start", () -> requestExecutorStats().completed);
+        Metrics.gauge("canteen_http_rejected", "Requests refused with 503 because the executor was full", () -> requestExecutorStats().rejected);
+        Metrics.gauge("canteen_http_queue_wait_avg_seconds", "Average wait for a request slot",
+                () -> requestExecutorStats().avgQueueMicros / 1e6);
+        Metrics.gauge("canteen_payments_queued", "Payments waiting for a worker", Payment::queuedPayments);
+        Metrics.gauge("canteen_password_hash_queued", "Password hashes waiting for the pool", () -> Passwords.shared().queued());
+        Metrics.gauge("canteen_sessions", "Live sessions", () -> SessionStore.shared().size());
+        Metrics.gauge("canteen_review_queue_depth", "Reviews accepted but not yet written", () -> ReviewQueue.shared().depth());
+        Metrics.gauge("canteen_order_feed_subscribers", "Open order feed streams", () -> OrderEvents.shared().subscriberCount());
+        Metrics.gauge("canteen_order_feed_dropped", "Slow order feed subscribers dropped", () -> OrderEvents.shared().droppedSubscribers());
     }
 
     // ---------------- Static File Handler ----------------
+    // Serves preloaded assets from memory; unknown paths get index.html
     static class StaticFileHandler implements HttpHandler {
+        private final StaticAssets assets;
+
+        StaticFileHandler(StaticAssets assets) {
+            this.assets = assets;
+        }
+
         @Override
         public void handle(HttpExchange exchange) throws IOException {
             String path = exchange.getRequestURI().getPath();
             if (path.equals("/")) path = "/index.html";
-            File file = new File(WEB_DIR + path);
-            if (file.exists() && !file.isDirectory()) {
-                String contentType = getContentType(path);
-                exchange.getResponseHeaders().set("Content-Type", contentType);
-                exchange.sendResponseHeaders(200, file.length());
-                Files.copy(file.toPath(), exchange.getResponseBody());
-            } else {
-                File indexFile = new File(WEB_DIR + "/index.html");
-                exchange.getResponseHeaders().set("Content-Type", "text/html");
-                exchange.sendResponseHeaders(200, indexFile.length());
-                Files.copy(indexFile.toPath(), exchange.getResponseBody());
+            StaticAssets.Asset asset = assets.get(path);
+            if (asset == null) asset = assets.get("/index.html");
+            if (asset == null) {
+                sendResponse(exchange, "{\"error\":\"Not found\"}", 404);
+                return;
+            }
+
+            String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            boolean gzip = asset.gzip != null && acceptEncoding != null && acceptEncoding.contains("gzip");
+            String etag = gzip ? asset.gzipEtag : asset.etag;
+
+            exchange.getResponseHeaders().set("Content-Type", asset.contentType);
+            exchange.getResponseHeaders().set("ETag", etag);
+            exchange.getResponseHeaders().set("Last-Modified", asset.lastModified);
+            exchange.getResponseHeaders().set("Cache-Control", asset.cacheControl);
+            exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+
+            if (isNotModified(exchange, asset)) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+
+            byte[] body = gzip ? asset.gzip : asset.bytes;
+            if (gzip) exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
             }
-            exchange.getResponseBody().close();
         }
 
-        private String getContentType(String path) {
-            if (path.endsWith(".css")) return "text/css";
-            if (path.endsWith(".js")) return "application/javascript";
-            if (path.endsWith(".html")) return "text/html";
-            if (path.endsWith(".json")) return "application/json";
-            return "text/plain";
+        // If-None-Match wins over If-Modified-Since when both are sent
+        private static boolean isNotModified(HttpExchange exchange, StaticAssets.Asset asset) {
+            String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+            if (ifNoneMatch != null) {
+                return ifNoneMatch.contains(asset.etag) || ifNoneMatch.contains(asset.gzipEtag);
+            }
+            String ifModifiedSince = exchange.getRequestHeaders().getFirst("If-Modified-Since");
+            if (ifModifiedSince != null) {
+                try {
+                    long since = ZonedDateTime.parse(ifModifiedSince, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+                    return asset.lastModifiedMillis <= since;
+                } catch (DateTimeParseException e) {
+                    return false;
+                }
+            }
+            return false;
         }
     }
 
@@ -75,17 +218,13 @@ public class CanteenAPIService {
                 return;
             }
             try {
-                String requestBody = readRequestBody(exchange);
-                Map<String, String> params = gson.fromJson(requestBody, Map.class);
-
-                String name = params.get("name").trim();
-                String email = params.get("email").trim().toLowerCase();
-                String password = params.get("password").trim();
+                RegisterRequest req = json.read(exchange, RegisterRequest.class);
 
-                // Hash password
-                String hashedPassword = hashPassword(password);
+                String name = required(req.name(), "name").trim();
+                String email = required(req.email(), "email").trim().toLowerCase();
+                String password = required(req.password(), "password").trim();
 
-                boolean success = User.register(name, email, hashedPassword);
+                boolean success = User.register(name, email, password);
 
                 if (success) {
                     sendResponse(exchange, "{\"success\":true,\"message\":\"Registration successful\"}", 200);
@@ -93,6 +232,15 @@ public class CanteenAPIService {
                     sendResponse(exchange, "{\"success\":false,\"error\":\"Email already exists\"}", 400);
                 }
 
+            } catch (JsonCodec.PayloadTooLargeException e) {
+                sendJson(exchange, Map.of("success", false, "error", e.getMessage()), 413);
+            } catch (IllegalArgumentException e) {
+                sendJson(exchange, Map.of("success", false, "error", e.getMessage()), 400);
+            } catch (JsonParseException e) {
+                sendResponse(exchange, "{\"success\":false,\"error\":\"Invalid request body\"}", 400);
+            } catch (IllegalStateException e) {
+                // password hashing pool is saturated
+                sendJson(exchange, Map.of("success", false, "error", e.getMessage()), 503);
             } catch (Exception e) {
                 e.printStackTrace();
                 sendResponse(exchange, "{\"success\":false,\"error\":\"Server error\"}", 500);
@@ -109,63 +257,679 @@ public class CanteenAPIService {
                 return;
             }
             try {
-                String requestBody = readRequestBody(exchange);
-                Map<String, String> params = gson.fromJson(requestBody, Map.class);
+                LoginRequest req = json.read(exchange, LoginRequest.class);
 
-                String email = params.get("email").trim().toLowerCase();
-                String password = params.get("password").trim();
-                String hashedPassword = hashPassword(password);
+                String email = required(req.email(), "email").trim().toLowerCase();
+                String password = required(req.password(), "password").trim();
 
-                User user = User.login(email, hashedPassword);
+                User user = User.login(email, password);
 
                 if (user != null) {
-                    String response = gson.toJson(Map.of(
+                    String token = SessionStore.shared().create(user);
+                    exchange.getResponseHeaders().add("Set-Cookie",
+                            SessionStore.COOKIE_NAME + "=" + token + "; Path=/; HttpOnly; SameSite=Lax");
+                    sendJson(exchange, Map.of(
                             "success", true,
+                            "token", token,
                             "user", Map.of(
                                     "id", user.id,
                                     "name", user.name,
                                     "email", user.email,
                                     "wallet", user.wallet
                             )
-                    ));
-                    sendResponse(exchange, response, 200);
+                    ), 200);
                 } else {
                     sendResponse(exchange, "{\"success\":false,\"error\":\"Invalid credentials\"}", 401);
                 }
 
+            } catch (JsonCodec.PayloadTooLargeException e) {
+                sendJson(exchange, Map.of("success", false, "error", e.getMessage()), 413);
+            } catch (IllegalArgumentException e) {
+                sendJson(exchange, Map.of("success", false, "error", e.getMessage()), 400);
+            } catch (JsonParseException e) {
+                sendResponse(exchange, "{\"success\":false,\"error\":\"Invalid request body\"}", 400);
+            } catch (IllegalStateException e) {
+                // password hashing pool is saturated
+                sendJson(exchange, Map.of("success", false, "error", e.getMessage()), 503);
+            } catch (Exception e) {
+                e.printStackTrace();
+                sendResponse(exchange, "{\"success\":false,\"error\":\"Server error\"}", 500);
+            }
+        }
+    }
+
+    // ---------------- Logout Handler ----------------
+    static class LogoutHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendResponse(exchange, "{\"error\":\"Method not allowed\"}", 405);
+                return;
+            }
+            SessionStore.shared().revoke((String) exchange.getAttribute(SessionStore.TOKEN_ATTRIBUTE));
+            exchange.getResponseHeaders().add("Set-Cookie", SessionStore.COOKIE_NAME + "=; Path=/; Max-Age=0; HttpOnly; SameSite=Lax");
+            sendResponse(exchange, "{\"success\":true}", 200);
+        }
+    }
+
+    // ---------------- Wallet Handler ----------------
+    // GET /api/wallet: the logged-in user's live balance
+    static class WalletHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                sendResponse(exchange, "{\"error\":\"Method not allowed\"}", 405);
+                return;
+            }
+            User user = currentUser(exchange);
+            if (user == null) {
+                sendResponse(exchange, "{\"success\":false,\"error\":\"Login required\"}", 401);
+                return;
+            }
+            try {
+                sendJson(exchange, Map.of("success", true, "wallet", Wallet.shared().balance(user.id)), 200);
+            } catch (Exception e) {
+                e.printStackTrace();
+                sendResponse(exchange, "{\"success\":false,\"error\":\"Server error\"}", 500);
+            }
+        }
+    }
+
+    // ---------------- Menu Handler ----------------
+    // Serves Menu's available items from bytes serialized once per catalog version.
+    // Clients polling with If-None-Match get a bodiless 304 while the menu is unchanged.
+    static class MenuHandler implements HttpHandler {
+        private static volatile MenuPayload payload;
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"GET".equals(exchange.getRequestMethod()) && !"HEAD".equals(exchange.getRequestMethod())) {
+                sendResponse(exchange, "{\"error\":\"Method not allowed\"}", 405);
+                return;
+            }
+            MenuPayload p;
+            try {
+                p = currentPayload();
+            } catch (Exception e) {
+                e.printStackTrace();
+                sendResponse(exchange, "{\"success\":false,\"error\":\"Server error\"}", 500);
+                return;
+            }
+
+            String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+            String etag = gzip ? p.gzipEtag : p.etag;
+
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+            exchange.getResponseHeaders().set("ETag", etag);
+
+            String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+            if (ifNoneMatch != null && (ifNoneMatch.contains(p.etag) || ifNoneMatch.contains(p.gzipEtag))) {
+                exchange.sendResponseHeaders(304, -1);
+                exchange.close();
+                return;
+            }
+
+            byte[] body = gzip ? p.gzip : p.json;
+            if (gzip) exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            if ("HEAD".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+                return;
+            }
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        }
+
+        // Re-serialize only when the catalog version moves
+        private static MenuPayload currentPayload() throws SQLException, IOException {
+            Menu.Catalog catalog = Menu.catalog();
+            MenuPayload p = payload;
+            if (p != null && p.version == catalog.version) return p;
+            synchronized (MenuHandler.class) {
+                p = payload;
+                if (p != null && p.version == catalog.version) return p;
+                byte[] json = gson.toJson(catalog.available).getBytes(StandardCharsets.UTF_8);
+                p = new MenuPayload(catalog.version, json, StaticAssets.gzip(json));
+                payload = p;
+                return p;
+            }
+        }
+    }
+
+    static final class MenuPayload {
+        final long version;
+        final byte[] json, gzip;
+        final String etag, gzipEtag;
+
+        MenuPayload(long version, byte[] json, byte[] gzip) {
+            this.version = version;
+            this.json = json;
+            this.gzip = gzip;
+            this.etag = "\"menu-" + version + "\"";
+            this.gzipEtag = "\"menu-" + version + "-gz\"";
+        }
+    }
+
+    // ---------------- Order Handler ----------------
+    static class OrderHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendResponse(exchange, "{\"error\":\"Method not allowed\"}", 405);
+                return;
+            }
+            User user = currentUser(exchange);
+            if (user == null) {
+                sendResponse(exchange, "{\"success\":false,\"error\":\"Login required\"}", 401);
+                return;
+            }
+            try {
+                PlaceOrderRequest req = json.read(exchange, PlaceOrderRequest.class);
+
+                Order.PlacedOrder order = new Order().placeOrder(user.id, req.timeSlot(), req.items());
+                sendJson(exchange, Map.of("success", true, "order", order), 200);
+
+            } catch (JsonCodec.PayloadTooLargeException e) {
+                sendJson(exchange, Map.of("success", false, "error", e.getMessage()), 413);
+            } catch (IllegalArgumentException e) {
+                sendJson(exchange, Map.of("success", false, "error", e.getMessage()), 400);
+            } catch (IllegalStateException e) {
+                // slot full
+                sendJson(exchange, Map.of("success", false, "error", e.getMessage()), 409);
+            } catch (JsonParseException e) {
+                sendResponse(exchange, "{\"success\":false,\"error\":\"Invalid request body\"}", 400);
+            } catch (Exception e) {
+                e.printStackTrace();
+                sendResponse(exchange, "{\"success\":false,\"error\":\"Server error\"}", 500);
+            }
+        }
+    }
+
+    // ---------------- Cancel Order Handler ----------------
+    static class CancelOrderHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendResponse(exchange, "{\"error\":\"Method not allowed\"}", 405);
+                return;
+            }
+            User user = currentUser(exchange);
+            if (user == null) {
+                sendResponse(exchange, "{\"success\":false,\"error\":\"Login required\"}", 401);
+                return;
+            }
+            try {
+                CancelOrderRequest req = json.read(exchange, CancelOrderRequest.class);
+                int orderId = required(req.orderId(), "orderId");
+
+                if (new Order().cancelOrder(orderId, user.id)) {
+                    sendResponse(exchange, "{\"success\":true}", 200);
+                } else {
+                    sendResponse(exchange, "{\"success\":false,\"error\":\"Order cannot be cancelled\"}", 409);
+                }
+
+            } catch (JsonCodec.PayloadTooLargeException e) {
+                sendJson(exchange, Map.of("success", false, "error", e.getMessage()), 413);
+            } catch (IllegalArgumentException e) {
+                sendJson(exchange, Map.of("success", false, "error", e.getMessage()), 400);
+            } catch (JsonParseException e) {
+                sendResponse(exchange, "{\"success\":false,\"error\":\"Invalid request body\"}", 400);
+            } catch (Exception e) {
+                e.printStackTrace();
+                sendResponse(exchange, "{\"success\":false,\"error\":\"Server error\"}", 500);
+            }
+        }
+    }
+
+    // ---------------- Order Status Handler ----------------
+    // POST /api/orders/status {orderId, status} from the kitchen, authorized by the
+    // X-Kitchen-Key header (disabled unless KITCHEN_KEY is configured)
+    static class OrderStatusHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendResponse(exchange, "{\"error\":\"Method not allowed\"}", 405);
+                return;
+            }
+            if (!isKitchen(exchange)) {
+                sendResponse(exchange, "{\"success\":false,\"error\":\"Forbidden\"}", 403);
+                return;
+            }
+            try {
+                OrderStatusRequest req = json.read(exchange, OrderStatusRequest.class);
+                int orderId = required(req.orderId(), "orderId");
+                String status = required(req.status(), "status").trim().toUpperCase();
+
+                if (new Order().advanceStatus(orderId, status)) {
+                    sendResponse(exchange, "{\"success\":true}", 200);
+                } else {
+                    sendResponse(exchange, "{\"success\":false,\"error\":\"Order is not ready for that status\"}", 409);
+                }
+
+            } catch (JsonCodec.PayloadTooLargeException e) {
+                sendJson(exchange, Map.of("success", false, "error", e.getMessage()), 413);
+            } catch (IllegalArgumentException e) {
+                sendJson(exchange, Map.of("success", false, "error", e.getMessage()), 400);
+            } catch (JsonParseException e) {
+                sendResponse(exchange, "{\"success\":false,\"error\":\"Invalid request body\"}", 400);
+            } catch (Exception e) {
+                e.printStackTrace();
+                sendResponse(exchange, "{\"success\":false,\"error\":\"Server error\"}", 500);
+            }
+        }
+    }
+
+    // ---------------- Order Events Handler ----------------
+    // GET /api/orders/events: Server-Sent Events feed of order and payment changes for the
+    // kitchen and pickup screens, replacing polling. Resumes after Last-Event-ID (header,
+    // or ?lastEventId= for the first connect). The feed carries every student's orders and
+    // payments, so it needs the X-Kitchen-Key header like the status endpoint. Each stream
+    // is written from its own thread so an open feed doesn't hold one of the request
+    // executor's slots.
+    static class OrderEventsHandler implements HttpHandler {
+        private static final long KEEPALIVE_MS = Config.getLong("ORDER_EVENTS_KEEPALIVE_MS", 15_000);
+        private static final ExecutorService streams = streamExecutor();
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                sendResponse(exchange, "{\"error\":\"Method not allowed\"}", 405);
+                return;
+            }
+            if (!isKitchen(exchange)) {
+                sendResponse(exchange, "{\"success\":false,\"error\":\"Forbidden\"}", 403);
+                return;
+            }
+            String last = exchange.getRequestHeaders().getFirst("Last-Event-ID");
+            if (last == null) last = queryParams(exchange).get("lastEventId");
+            OrderEvents.Subscription subscription;
+            try {
+                subscription = OrderEvents.shared().subscribe(last == null || last.isBlank() ? null : Long.valueOf(last.trim()));
+            } catch (NumberFormatException e) {
+                sendResponse(exchange, "{\"success\":false,\"error\":\"Invalid Last-Event-ID\"}", 400);
+                return;
+            } catch (IllegalStateException e) {
+                sendJson(exchange, Map.of("success", false, "error", e.getMessage()), 503);
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+            exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+            exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+            exchange.sendResponseHeaders(200, 0); // chunked, open until the client leaves
+            try {
+                streams.execute(() -> stream(exchange, subscription));
+            } catch (RuntimeException e) {
+                subscription.close();
+                exchange.close();
+            }
+        }
+
+        private static void stream(HttpExchange exchange, OrderEvents.Subscription subscription) {
+            try (subscription;
+                 Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 8192)) {
+                out.write("retry: 3000\n\n");
+                // Missed more than the replay buffer holds: the client must reload its state
+                if (subscription.hasGap()) out.write("event: reset\ndata: {}\n\n");
+                for (OrderEvents.Event e : subscription.replay()) writeEvent(out, e);
+                out.flush();
+
+                while (true) {
+                    OrderEvents.Event e = subscription.poll(KEEPALIVE_MS, TimeUnit.MILLISECONDS);
+                    if (e == null) {
+                        if (subscription.isDropped()) {
+                            out.write("event: dropped\ndata: {}\n\n"); // too slow; reconnect with Last-Event-ID
+                            break;
+                        }
+                        out.write(": keepalive\n\n");
+                    }
+                    while (e != null) {
+                        writeEvent(out, e);
+                        e = subscription.poll(0, TimeUnit.MILLISECONDS);
+                    }
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // client went away
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                exchange.close();
+            }
+        }
+
+        private static void writeEvent(Writer out, OrderEvents.Event e) throws IOException {
+            out.write("id: ");
+            out.write(Long.toString(e.id));
+            out.write("\nevent: ");
+            out.write(e.type);
+            out.write("\ndata: ");
+            out.write(e.json());
+            out.write("\n\n");
+        }
+
+        private static ExecutorService streamExecutor() {
+            ExecutorService virtual = RequestExecutor.newVirtualThreadExecutor();
+            if (virtual != null) return virtual;
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "order-feed");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    // ---------------- Slots Handler ----------------
+    // Live pickup-slot availability straight from the in-memory counters
+    static class SlotsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                sendResponse(exchange, "{\"error\":\"Method not allowed\"}", 405);
+                return;
+            }
+            try {
+                sendJson(exchange, SlotScheduler.shared().availability(), 200);
+            } catch (Exception e) {
+                e.printStackTrace();
+                sendResponse(exchange, "{\"success\":false,\"error\":\"Server error\"}", 500);
+            }
+        }
+    }
+
+    // ---------------- Reviews Handler ----------------
+    // GET /api/reviews?menuItemId=..|userId=..&cursor=..&limit=..  (one keyset page)
+    // POST /api/reviews {menuItemId, rating, comment}  (202 once queued, see ReviewQueue)
+    static class ReviewsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if ("POST".equals(exchange.getRequestMethod())) {
+                addReview(exchange);
+                return;
+            }
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                sendResponse(exchange, "{\"error\":\"Method not allowed\"}", 405);
+                return;
+            }
+            try {
+                Map<String, String> query = queryParams(exchange);
+                String cursor = query.get("cursor");
+                int limit = query.containsKey("limit") ? Integer.parseInt(query.get("limit")) : Review.DEFAULT_PAGE_SIZE;
+
+                Review.ReviewPage page;
+                if (query.containsKey("menuItemId")) {
+                    page = new Review().getReviewsForMenuItem(Integer.parseInt(query.get("menuItemId")), cursor, limit);
+                } else if (query.containsKey("userId")) {
+                    page = new Review().getReviewsByUser(Integer.parseInt(query.get("userId")), cursor, limit);
+                } else {
+                    throw new IllegalArgumentException("menuItemId or userId is required");
+                }
+                sendJson(exchange, page, 200);
+
+            } catch (IllegalArgumentException e) {
+                sendJson(exchange, Map.of("success", false, "error", e.getMessage()), 400);
+            } catch (Exception e) {
+                e.printStackTrace();
+                sendResponse(exchange, "{\"success\":false,\"error\":\"Server error\"}", 500);
+            }
+        }
+
+        private void addReview(HttpExchange exchange) throws IOException {
+            User user = currentUser(exchange);
+            if (user == null) {
+                sendResponse(exchange, "{\"success\":false,\"error\":\"Login required\"}", 401);
+                return;
+            }
+            try {
+                AddReviewRequest req = json.read(exchange, AddReviewRequest.class);
+                int menuItemId = required(req.menuItemId(), "menuItemId");
+                int rating = required(req.rating(), "rating");
+                String comment = req.comment() == null || req.comment().isBlank() ? null : req.comment().trim();
+
+                new Review().addReview(user.id, menuItemId, rating, comment);
+                sendResponse(exchange, "{\"success\":true}", 202);
+
+            } catch (JsonCodec.PayloadTooLargeException e) {
+                sendJson(exchange, Map.of("success", false, "error", e.getMessage()), 413);
+            } catch (IllegalArgumentException e) {
+                sendJson(exchange, Map.of("success", false, "error", e.getMessage()), 400);
+            } catch (IllegalStateException e) {
+                // review queue full
+                sendJson(exchange, Map.of("success", false, "error", e.getMessage()), 503);
+            } catch (JsonParseException e) {
+                sendResponse(exchange, "{\"success\":false,\"error\":\"Invalid request body\"}", 400);
+            } catch (Exception e) {
+                e.printStackTrace();
+                sendResponse(exchange, "{\"success\":false,\"error\":\"Server error\"}", 500);
+            }
+        }
+    }
+
+    // ---------------- Review Stream Handler ----------------
+    // GET /api/reviews/stream?menuItemId=..|userId=..  (every review, written as rows arrive)
+    static class ReviewStreamHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                sendResponse(exchange, "{\"error\":\"Method not allowed\"}", 405);
+                return;
+            }
+            Map<String, String> query = queryParams(exchange);
+            int menuItemId, userId;
+            try {
+                menuItemId = query.containsKey("menuItemId") ? Integer.parseInt(query.get("menuItemId")) : -1;
+                userId = query.containsKey("userId") ? Integer.parseInt(query.get("userId")) : -1;
+            } catch (NumberFormatException e) {
+                sendResponse(exchange, "{\"success\":false,\"error\":\"Invalid id\"}", 400);
+                return;
+            }
+            if (menuItemId < 0 && userId < 0) {
+                sendResponse(exchange, "{\"success\":false,\"error\":\"menuItemId or userId is required\"}", 400);
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+            exchange.sendResponseHeaders(200, 0); // chunked
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 8192)) {
+                if (menuItemId >= 0) new Review().streamReviewsForMenuItem(menuItemId, out);
+                else new Review().streamReviewsByUser(userId, out);
+            } catch (SQLException e) {
+                // Headers are gone already; cutting the stream short is all we can do
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // ---------------- Popular Items Handler ----------------
+    // GET /api/popular?window=all|today|hour&limit=..
+    static class PopularHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                sendResponse(exchange, "{\"error\":\"Method not allowed\"}", 405);
+                return;
+            }
+            try {
+                Map<String, String> query = queryParams(exchange);
+                int limit = Math.min(50, Integer.parseInt(query.getOrDefault("limit", "10")));
+                OrderSummary summary = new OrderSummary();
+                List<OrderSummary.PopularItem> items;
+                switch (query.getOrDefault("window", "all")) {
+                    case "today": items = summary.getTodaysPopularMenuItems(limit); break;
+                    case "hour": items = summary.getTrendingMenuItems(limit); break;
+                    case "all": items = summary.getPopularMenuItems(limit); break;
+                    default: throw new IllegalArgumentException("window must be all, today or hour");
+                }
+                sendJson(exchange, items, 200);
+
+            } catch (IllegalArgumentException e) {
+                sendJson(exchange, Map.of("success", false, "error", e.getMessage()), 400);
+            } catch (Exception e) {
+                e.printStackTrace();
+                sendResponse(exchange, "{\"success\":false,\"error\":\"Server error\"}", 500);
+            }
+        }
+    }
+
+    // ---------------- Payment Handler ----------------
+    // POST /api/payments {orderId, amount, method} with an Idempotency-Key header; login
+    // required, and only the caller's own orders can be paid.
+    // The handler returns as soon as the payment is queued; the response is sent when it
+    // completes, and the returned stage reports its status to the metrics.
+    static class PaymentHandler implements Metrics.AsyncHandler {
+        @Override
+        public CompletionStage<Integer> handle(HttpExchange exchange) throws IOException {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                sendResponse(exchange, "{\"error\":\"Method not allowed\"}", 405);
+                return null;
+            }
+            User user = currentUser(exchange);
+            if (user == null) {
+                sendResponse(exchange, "{\"success\":false,\"error\":\"Login required\"}", 401);
+                return null;
+            }
+            CompletableFuture<Payment.PaymentResult> result;
+            try {
+                PaymentRequest req = json.read(exchange, PaymentRequest.class);
+                int orderId = required(req.orderId(), "orderId");
+                double amount = required(req.amount(), "amount");
+                String key = exchange.getRequestHeaders().getFirst("Idempotency-Key");
+                if (key == null) key = req.idempotencyKey();
+
+                result = new Payment().submitPayment(user.id, orderId, amount, req.method(), key);
+
+            } catch (JsonCodec.PayloadTooLargeException e) {
+                sendJson(exchange, Map.of("success", false, "error", e.getMessage()), 413);
+                return null;
+            } catch (IllegalArgumentException e) {
+                sendJson(exchange, Map.of("success", false, "error", e.getMessage()), 400);
+                return null;
+            } catch (JsonParseException e) {
+                sendResponse(exchange, "{\"success\":false,\"error\":\"Invalid request body\"}", 400);
+                return null;
             } catch (Exception e) {
                 e.printStackTrace();
                 sendResponse(exchange, "{\"success\":false,\"error\":\"Server error\"}", 500);
+                return null;
             }
+
+            return result.handle((r, t) -> {
+                int status;
+                try {
+                    if (t != null) {
+                        t.printStackTrace();
+                        status = 500;
+                        sendResponse(exchange, "{\"success\":false,\"error\":\"Server error\"}", status);
+                        return status;
+                    }
+                    switch (r.outcome) {
+                        case SUCCESS: status = 200; break;
+                        case ORDER_NOT_FOUND: status = 404; break;
+                        case NOT_PAYABLE: status = 409; break;
+                        case AMOUNT_MISMATCH: status = 400; break;
+                        default: status = 503; break; // BUSY
+                    }
+                    sendJson(exchange, Map.of("success", r.outcome == Payment.Outcome.SUCCESS, "payment", r), status);
+                } catch (IOException e) {
+                    exchange.close();
+                    status = 500;
+                }
+                return status;
+            });
         }
     }
 
+    // ---------------- Metrics Handler ----------------
+    // GET /metrics in Prometheus text format
+    static class MetricsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                sendResponse(exchange, "{\"error\":\"Method not allowed\"}", 405);
+                return;
+            }
+            byte[] body = Metrics.scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", Metrics.CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        }
+    }
+
+    // ---------------- Request bodies ----------------
+    record RegisterRequest(String name, String email, String password) {}
+
+    record LoginRequest(String email, String password) {}
+
+    record PlaceOrderRequest(String timeSlot, List<Order.CartLine> items) {}
+
+    record CancelOrderRequest(Integer orderId) {}
+
+    record OrderStatusRequest(Integer orderId, String status) {}
+
+    record AddReviewRequest(Integer menuItemId, Integer rating, String comment) {}
+
+    record PaymentRequest(Integer orderId, Double amount, String method, String idempotencyKey) {}
+
     // ---------------- Utilities ----------------
-    private static String readRequestBody(HttpExchange exchange) throws IOException {
-        InputStream is = exchange.getRequestBody();
-        BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-        StringBuilder body = new StringBuilder();
-        String line;
-        while ((line = reader.readLine()) != null) body.append(line);
-        return body.toString();
+    // User resolved from the session token by SessionStore.SessionFilter (no DB call), or null
+    private static User currentUser(HttpExchange exchange) {
+        return (User) exchange.getAttribute(SessionStore.USER_ATTRIBUTE);
+    }
+
+    // Kitchen and pickup screens send X-Kitchen-Key; nobody matches unless KITCHEN_KEY
+    // is configured
+    private static boolean isKitchen(HttpExchange exchange) {
+        String key = exchange.getRequestHeaders().getFirst("X-Kitchen-Key");
+        return !KITCHEN_KEY.isEmpty() && KITCHEN_KEY.equals(key);
+    }
+
+    private static Map<String, String> queryParams(HttpExchange exchange) {
+        Map<String, String> params = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null || query.isEmpty()) return params;
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq <= 0) continue;
+            params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                    URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+        }
+        return params;
     }
 
+    private static <T> T required(T value, String field) {
+        if (value == null) throw new IllegalArgumentException(field + " is required");
+        return value;
+    }
+
+    // Serialize straight into the response body (UTF-8, chunked)
+    private static void sendJson(HttpExchange exchange, Object body, int statusCode) throws IOException {
+        corsHeaders(exchange);
+        json.write(exchange, statusCode, body);
+    }
+
+    // For bodies that are already JSON text (fixed messages)
     private static void sendResponse(HttpExchange exchange, String response, int statusCode) throws IOException {
-        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        corsHeaders(exchange);
+        exchange.sendResponseHeaders(statusCode, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+
+    private static void corsHeaders(HttpExchange exchange) {
         exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
         exchange.getResponseHeaders().set("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
-        exchange.getResponseHeaders().set("Access-Control-Allow-Headers", "Content-Type");
-        exchange.sendResponseHeaders(statusCode, response.getBytes().length);
-        OutputStream os = exchange.getResponseBody();
-        os.write(response.getBytes());
-        os.close();
-    }
-
-    private static String hashPassword(String password) throws Exception {
-        MessageDigest md = MessageDigest.getInstance("SHA-256");
-        byte[] hash = md.digest(password.getBytes("UTF-8"));
-        StringBuilder sb = new StringBuilder();
-        for (byte b : hash) sb.append(String.format("%02x", b));
-        return sb.toString();
+        exchange.getResponseHeaders().set("Access-Control-Allow-Headers", "Content-Type, Authorization, Idempotency-Key");
     }
 }
@@ -0,0 +1,552 @@
+// ConnectionPool.java
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Bounded JDBC connection pool. Borrowed connections are proxies whose close() hands
+// the physical connection back to the pool instead of closing it. Likewise each physical
+// connection keeps its prepared statements: closing one puts it back in a small LRU
+// cache keyed by SQL and flags, so the next prepareStatement for the same query skips
+// the parse. Connection settings a borrower changes (isolation, read-only, catalog,
+// schema) are put back to what the driver opened with before the next borrower gets it.
+public class ConnectionPool {
+
+    private final String url, user, password;
+    private final int minIdle, maxSize;
+    private final long idleTimeoutMs, borrowTimeoutMs, validateAfterMs;
+    private final int validationTimeoutSec;
+    private final int statementCacheSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final Deque<PooledConnection> idle = new ArrayDeque<>(); // LIFO: hottest connection first
+    private int total;   // open physical connections (idle + active + being opened)
+    private int waiters; // threads blocked in borrow()
+    private long created, destroyed, timeouts;
+    private boolean closed;
+    private final LongAdder statementHits = new LongAdder(), statementMisses = new LongAdder();
+
+    private final ScheduledExecutorService housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "db-pool-housekeeper");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public ConnectionPool(String url, String user, String password,
+                          int minIdle, int maxSize, long idleTimeoutMs, long borrowTimeoutMs,
+                          long validateAfterMs, int validationTimeoutSec, int statementCacheSize) {
+        if (maxSize < 1) throw new IllegalArgumentException("maxSize must be at least 1");
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.minIdle = Math.max(0, Math.min(minIdle, maxSize));
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.borrowTimeoutMs = borrowTimeoutMs;
+        this.validateAfterMs = validateAfterMs;
+        this.validationTimeoutSec = validationTimeoutSec;
+        this.statementCacheSize = Math.max(0, statementCacheSize);
+
+        long period = Math.max(1000, idleTimeoutMs / 2);
+        housekeeper.scheduleWithFixedDelay(this::housekeep, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    // Borrow a connection, waiting up to the borrow timeout when the pool is exhausted
+    public Connection borrow() throws SQLException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(borrowTimeoutMs);
+        while (true) {
+            PooledConnection candidate = null;
+            boolean open = false;
+
+            lock.lock();
+            try {
+                while (true) {
+                    if (closed) throw new SQLException("Connection pool is closed");
+                    if (!idle.isEmpty()) {
+                        candidate = idle.pollFirst();
+                        break;
+                    }
+                    if (total < maxSize) {
+                        total++;
+                        open = true;
+                        break;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        timeouts++;
+                        throw new SQLException("Timed out after " + borrowTimeoutMs
+                                + " ms waiting for a database connection (pool size " + maxSize + ")");
+                    }
+                    waiters++;
+                    try {
+                        available.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("Interrupted while waiting for a database connection", e);
+                    } finally {
+                        waiters--;
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (open) {
+                candidate = openPhysical(); // releases the reserved slot on failure
+            } else if (!isUsable(candidate)) {
+                discard(candidate);
+                continue;
+            }
+            return candidate.lease();
+        }
+    }
+
+    public PoolStats stats() {
+        lock.lock();
+        try {
+            return new PoolStats(total - idle.size(), idle.size(), total, maxSize, waiters, created, destroyed, timeouts,
+                    statementHits.sum(), statementMisses.sum());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void close() {
+        housekeeper.shutdownNow();
+        lock.lock();
+        try {
+            closed = true;
+            for (PooledConnection pc : idle) closeQuietly(pc);
+            total -= idle.size();
+            idle.clear();
+            available.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ---------------- Internals ----------------
+
+    private PooledConnection openPhysical() throws SQLException {
+        try {
+            Connection raw = DriverManager.getConnection(url, user, password);
+            PooledConnection pc;
+            try {
+                pc = new PooledConnection(raw);
+            } catch (SQLException | RuntimeException e) {
+                raw.close();
+                throw e;
+            }
+            lock.lock();
+            try {
+                created++;
+            } finally {
+                lock.unlock();
+            }
+            return pc;
+        } catch (SQLException | RuntimeException e) {
+            lock.lock();
+            try {
+                total--;
+                available.signal();
+            } finally {
+                lock.unlock();
+            }
+            throw e;
+        }
+    }
+
+    // Validate on borrow, but skip the round trip for connections that were returned very recently
+    private boolean isUsable(PooledConnection pc) {
+        try {
+            if (pc.raw.isClosed()) return false;
+            if (System.currentTimeMillis() - pc.lastReturned < validateAfterMs) return true;
+            return pc.raw.isValid(validationTimeoutSec);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(PooledConnection pc, boolean broken) {
+        if (!broken) {
+            try {
+                if (!pc.raw.getAutoCommit()) {
+                    pc.raw.rollback(); // never hand an open transaction to the next borrower
+                    pc.raw.setAutoCommit(true);
+                }
+                if (pc.settingsChanged) pc.restoreSettings();
+                broken = pc.raw.isClosed();
+            } catch (SQLException e) {
+                broken = true;
+            }
+        }
+        if (broken) {
+            discard(pc);
+            return;
+        }
+        lock.lock();
+        try {
+            if (closed) {
+                total--;
+                destroyed++;
+                closeQuietly(pc);
+                return;
+            }
+            pc.lastReturned = System.currentTimeMillis();
+            idle.offerFirst(pc);
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void discard(PooledConnection pc) {
+        closeQuietly(pc);
+        lock.lock();
+        try {
+            total--;
+            destroyed++;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Evict connections idle past the timeout (down to minIdle), then top back up to minIdle
+    private void housekeep() {
+        Deque<PooledConnection> evicted = new ArrayDeque<>();
+        int toOpen;
+        lock.lock();
+        try {
+            if (closed) return;
+            long cutoff = System.currentTimeMillis() - idleTimeoutMs;
+            // oldest connections sit at the tail of the LIFO deque
+            Iterator<PooledConnection> it = idle.descendingIterator();
+            while (it.hasNext() && total - evicted.size() > minIdle) {
+                PooledConnection pc = it.next();
+                if (pc.lastReturned >= cutoff) break;
+                it.remove();
+                evicted.add(pc);
+            }
+            total -= evicted.size();
+            destroyed += evicted.size();
+            toOpen = Math.max(0, minIdle - idle.size());
+            toOpen = Math.min(toOpen, maxSize - total);
+            total += toOpen;
+        } finally {
+            lock.unlock();
+        }
+
+        for (PooledConnection pc : evicted) closeQuietly(pc);
+        for (int i = 0; i < toOpen; i++) {
+            try {
+                release(openPhysical(), false);
+            } catch (SQLException e) {
+                System.err.println("Connection pool could not open idle connection: " + e.getMessage());
+                // openPhysical already gave back this slot; give back the rest too
+                lock.lock();
+                try {
+                    total -= (toOpen - i - 1);
+                } finally {
+                    lock.unlock();
+                }
+                break;
+            }
+        }
+    }
+
+    private static void closeQuietly(PooledConnection pc) {
+        try {
+            pc.raw.close();
+        } catch (SQLException ignored) {
+        }
+    }
+
+    // One physical connection plus bookkeeping; lease() hands out a fresh single-use proxy
+    private final class PooledConnection {
+        final Connection raw;
+        final StatementCache statements = new StatementCache(statementCacheSize);
+        volatile long lastReturned = System.currentTimeMillis();
+        // Settings as opened, restored on release once a borrower has changed one
+        private final int isolation;
+        private final boolean readOnly;
+        private final String catalog, schema;
+        boolean settingsChanged; // only touched by the thread holding the connection
+
+        PooledConnection(Connection raw) throws SQLException {
+            this.raw = raw;
+            this.isolation = raw.getTransactionIsolation();
+            this.readOnly = raw.isReadOnly();
+            this.catalog = raw.getCatalog();
+            this.schema = raw.getSchema();
+        }
+
+        void restoreSettings() throws SQLException {
+            if (raw.getTransactionIsolation() != isolation) raw.setTransactionIsolation(isolation);
+            if (raw.isReadOnly() != readOnly) raw.setReadOnly(readOnly);
+            if (catalog != null && !catalog.equals(raw.getCatalog())) raw.setCatalog(catalog);
+            if (schema != null && !schema.equals(raw.getSchema())) raw.setSchema(schema);
+            settingsChanged = false;
+        }
+
+        Connection lease() {
+            Lease lease = new Lease(this);
+            lease.proxy = (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class},
+                    lease);
+            return lease.proxy;
+        }
+    }
+
+    // Idle prepared statements of one physical connection, least recently used first.
+    // A statement is taken out while it is in use, so two open statements never share
+    // one. Only touched by the thread holding the connection.
+    private static final class StatementCache extends LinkedHashMap<String, PreparedStatement> {
+        private final int capacity;
+
+        StatementCache(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        // Cache key: SQL plus the prepareStatement arguments after it (generated keys, result set type, ...)
+        static String key(Object[] args) {
+            if (args.length == 1) return (String) args[0];
+            return args[0] + "\u0000" + Arrays.deepToString(Arrays.copyOfRange(args, 1, args.length));
+        }
+
+        // Keep a returned statement unless an equivalent one is already cached
+        void offer(String key, PreparedStatement ps) {
+            if (capacity == 0 || containsKey(key)) {
+                closeQuietly(ps);
+                return;
+            }
+            put(key, ps);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+            if (size() <= capacity) return false;
+            closeQuietly(eldest.getValue());
+            return true;
+        }
+
+        private static void closeQuietly(PreparedStatement ps) {
+            try {
+                ps.close();
+            } catch (SQLException ignored) {
+            }
+        }
+    }
+
+    private final class Lease implements InvocationHandler {
+        // Connection settings that release() puts back
+        private static final Set<String> RESTORED = Set.of("setTransactionIsolation", "setReadOnly", "setCatalog", "setSchema");
+
+        private final PooledConnection pc;
+        private final AtomicBoolean returned = new AtomicBoolean();
+        private final List<CachedStatement> open = new ArrayList<>(2);
+        private volatile boolean broken;
+        Connection proxy;
+
+        Lease(PooledConnection pc) {
+            this.pc = pc;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (returned.compareAndSet(false, true)) {
+                        // Statements the caller left open go back to the cache with the connection
+                        for (CachedStatement s : new ArrayList<>(open)) s.giveBack();
+                        release(pc, broken);
+                    }
+                    return null;
+                case "prepareStatement":
+                    if (statementCacheSize > 0 && !returned.get()) return prepareCached(method, args);
+                    break;
+                case "isClosed":
+                    return returned.get() || pc.raw.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + pc.raw + "]";
+                case "unwrap":
+                    if (((Class<?>) args[0]).isInstance(proxy)) return proxy;
+                    break;
+                case "isWrapperFor":
+                    if (((Class<?>) args[0]).isInstance(proxy)) return true;
+                    break;
+                default:
+                    break;
+            }
+            if (returned.get()) throw new SQLException("Connection has already been returned to the pool");
+            if (RESTORED.contains(method.getName())) pc.settingsChanged = true;
+            return call(pc.raw, method, args);
+        }
+
+        private Object prepareCached(Method method, Object[] args) throws Throwable {
+            String key = StatementCache.key(args);
+            PreparedStatement ps = pc.statements.remove(key);
+            if (ps != null && !ps.isClosed()) {
+                statementHits.increment();
+            } else {
+                statementMisses.increment();
+                ps = (PreparedStatement) call(pc.raw, method, args);
+            }
+            CachedStatement handler = new CachedStatement(this, key, ps);
+            open.add(handler);
+            return Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[]{PreparedStatement.class},
+                    handler);
+        }
+
+        Object call(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                Throwable cause = e.getCause();
+                // SQLSTATE class 08 = connection exception: don't put this one back in the pool
+                if (cause instanceof SQLException) {
+                    String state = ((SQLException) cause).getSQLState();
+                    if (state != null && state.startsWith("08")) broken = true;
+                }
+                throw cause;
+            }
+        }
+    }
+
+    // A leased prepared statement; close() resets it and returns it to the connection's cache
+    private static final class CachedStatement implements InvocationHandler {
+        // Settings restored on return; any other statement-level setting makes it single-use
+        private static final Set<String> RESTORED = Set.of("setFetchSize", "setFetchDirection", "setMaxRows", "setQueryTimeout");
+        private static final Set<String> UNCACHEABLE = Set.of("setMaxFieldSize", "setLargeMaxRows", "setEscapeProcessing",
+                "setCursorName", "setPoolable", "closeOnCompletion");
+
+        private final Lease lease;
+        private final String key;
+        private final PreparedStatement ps;
+        private int[] saved; // fetch size, fetch direction, max rows, query timeout before the first change
+        private boolean closed, uncacheable;
+
+        CachedStatement(Lease lease, String key, PreparedStatement ps) {
+            this.lease = lease;
+            this.key = key;
+            this.ps = ps;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "close":
+                    giveBack();
+                    return null;
+                case "isClosed":
+                    return closed || ps.isClosed();
+                case "getConnection":
+                    return lease.proxy;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "CachedStatement[" + ps + "]";
+                case "unwrap":
+                    if (((Class<?>) args[0]).isInstance(proxy)) return proxy;
+                    break;
+                case "isWrapperFor":
+                    if (((Class<?>) args[0]).isInstance(proxy)) return true;
+                    break;
+                default:
+                    break;
+            }
+            if (closed) throw new SQLException("Statement is closed");
+            if (saved == null && RESTORED.contains(name)) {
+                saved = new int[]{ps.getFetchSize(), ps.getFetchDirection(), ps.getMaxRows(), ps.getQueryTimeout()};
+            } else if (UNCACHEABLE.contains(name)) {
+                uncacheable = true;
+            }
+            return lease.call(ps, method, args);
+        }
+
+        void giveBack() {
+            if (closed) return;
+            closed = true;
+            lease.open.remove(this);
+            if (uncacheable || lease.broken) {
+                StatementCache.closeQuietly(ps);
+                return;
+            }
+            try {
+                if (ps.isClosed()) return;
+                ps.clearParameters();
+                ps.clearBatch();
+                ps.clearWarnings();
+                if (saved != null) {
+                    ps.setFetchSize(saved[0]);
+                    ps.setFetchDirection(saved[1]);
+                    ps.setMaxRows(saved[2]);
+                    ps.setQueryTimeout(saved[3]);
+                }
+            } catch (SQLException e) {
+                StatementCache.closeQuietly(ps);
+                return;
+            }
+            lease.pc.statements.offer(key, ps);
+        }
+    }
+
+    public static class PoolStats {
+        public int active, idle, total, maxSize, waiters;
+        public long created, destroyed, timeouts;
+        public long statementHits, statementMisses; // prepareStatement served from / missing in the cache
+
+        public PoolStats(int active, int idle, int total, int maxSize, int waiters,
+                         long created, long destroyed, long timeouts, long statementHits, long statementMisses) {
+            this.active = active;
+            this.idle = idle;
+            this.total = total;
+            this.maxSize = maxSize;
+            this.waiters = waiters;
+            this.created = created;
+            this.destroyed = destroyed;
+            this.timeouts = timeouts;
+            this.statementHits = statementHits;
+            this.statementMisses = statementMisses;
+        }
+
+        @Override
+        public String toString() {
+            return "active=" + active + " idle=" + idle + " total=" + total + "/" + maxSize
+                    + " waiters=" + waiters + " created=" + created + " destroyed=" + destroyed
+                    + " timeouts=" + timeouts + " statementHits=" + statementHits + " statementMisses=" + statementMisses;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+// Dao.java
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Small JDBC core for the DAO classes: borrow a pooled connection, prepare (served from
+// the pool's per-connection statement cache), bind, and map rows. A RowMapper looks its
+// columns up once per result set and then reads every row by index.
+//
+// Every statement run here is timed in canteen_db_call, labelled by its verb and first
+// table (e.g. "SELECT reviews"). Code that drives JDBC itself wraps the execute in timed().
+public final class Dao {
+
+    // Rows per round trip for list queries; 0 leaves it to the driver
+    public static final int FETCH_SIZE = Config.getInt("DB_FETCH_SIZE", 0);
+
+    @FunctionalInterface
+    public interface Binder {
+        void bind(PreparedStatement ps) throws SQLException;
+    }
+
+    // Resolves column indexes for one result set and returns the reader for its rows
+    @FunctionalInterface
+    public interface RowMapper<T> {
+        Row<T> prepare(ResultSet rs) throws SQLException;
+    }
+
+    @FunctionalInterface
+    public interface Row<T> {
+        T read(ResultSet rs) throws SQLException;
+    }
+
+    public static final Binder NO_PARAMS = ps -> {};
+
+    // Statement labels by SQL text; IN lists of varying length make a few extra entries
+    private static final int MAX_CACHED_NAMES = 1000;
+    private static final Map<String, String> statementNames = new ConcurrentHashMap<>();
+
+    private Dao() {}
+
+    public static Connection connection() throws SQLException {
+        return DBConnection.getConnection();
+    }
+
+    // Time one JDBC call (execute and read) under the statement's label
+    public static <T> T timed(String sql, Metrics.SqlCall<T> call) throws SQLException {
+        return Metrics.sql(statementName(sql), call);
+    }
+
+    // "<VERB> <table>": the table after FROM/INTO, or after UPDATE; just the verb if there is none
+    static String statementName(String sql) {
+        String name = statementNames.get(sql);
+        if (name != null) return name;
+        String[] words = sql.trim().split("\\s+");
+        String verb = words[0].toUpperCase(Locale.ROOT);
+        String table = null;
+        if (verb.equals("UPDATE") && words.length > 1) {
+            table = words[1];
+        } else {
+            for (int i = 0; i < words.length - 1; i++) {
+                if (words[i].equalsIgnoreCase("FROM") || words[i].equalsIgnoreCase("INTO")) {
+                    table = words[i + 1];
+                    break;
+                }
+            }
+        }
+        if (table != null) table = table.replaceAll("\\W", "").toLowerCase(Locale.ROOT);
+        name = table == null || table.isEmpty() ? verb : verb + " " + table;
+        if (statementNames.size() < MAX_CACHED_NAMES) statementNames.put(sql, name);
+        return name;
+    }
+
+    // ---------------- Queries ----------------
+
+    public static <T> List<T> query(String sql, Binder binder, RowMapper<T> mapper) throws SQLException {
+        try (Connection c = connection()) {
+            return query(c, sql, binder, mapper);
+        }
+    }
+
+    public static <T> List<T> query(Connection c, String sql, Binder binder, RowMapper<T> mapper) throws SQLException {
+        return timed(sql, () -> {
+            try (PreparedStatement ps = c.prepareStatement(sql)) {
+                if (FETCH_SIZE > 0) ps.setFetchSize(FETCH_SIZE);
+                binder.bind(ps);
+                try (ResultSet rs = ps.executeQuery()) {
+                    List<T> rows = new ArrayList<>();
+                    if (!rs.next()) return rows;
+                    Row<T> row = mapper.prepare(rs);
+                    do {
+                        rows.add(row.read(rs));
+                    } while (rs.next());
+                    return rows;
+                }
+            }
+        });
+    }
+
+    // First row, or null if there is none
+    public static <T> T queryOne(String sql, Binder binder, RowMapper<T> mapper) throws SQLException {
+        try (Connection c = connection()) {
+            return queryOne(c, sql, binder, mapper);
+        }
+    }
+
+    public static <T> T queryOne(Connection c, String sql, Binder binder, RowMapper<T> mapper) throws SQLException {
+        return timed(sql, () -> {
+            try (PreparedStatement ps = c.prepareStatement(sql)) {
+                binder.bind(ps);
+                try (ResultSet rs = ps.executeQuery()) {
+                    return rs.next() ? mapper.prepare(rs).read(rs) : null;
+                }
+            }
+        });
+    }
+
+    // ---------------- Updates ----------------
+
+    // Returns the update count
+    public static int update(String sql, Binder binder) throws SQLException {
+        try (Connection c = connection()) {
+            return update(c, sql, binder);
+        }
+    }
+
+    public static int update(Connection c, String sql, Binder binder) throws SQLException {
+        return timed(sql, () -> {
+            try (PreparedStatement ps = c.prepareStatement(sql)) {
+                binder.bind(ps);
+                return ps.executeUpdate();
+            }
+        });
+    }
+}
@@ -1,32 +1,119 @@
+import java.nio.file.Path;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.Locale;
 
+// Where the data lives, chosen with DB_MODE:
+//   mysql    - the networked MySQL server at DB_URL (default)
+//   h2-mem   - in-process H2 in MySQL mode, gone when the JVM exits (tests, benchmarks)
+//   h2-file  - in-process H2 persisted under DB_FILE (single-canteen installs)
+// The embedded modes create their tables from schema.sql on start (DB_BOOTSTRAP=false to skip);
+// if that fails the class fails to initialize, rather than serving a database without tables.
 public class DBConnection {
-    private static final String URL = "jdbc:mysql://mysql.railway.internal:3306/railway?useSSL=false&serverTimezone=UTC";
-    private static final String USER = "root";
-    private static final String PASSWORD = "ZPBTQIvnrdEfwuFKCbHlyzCHTPsJJmIC"; // change to your DB password
+
+    public enum Mode {
+        MYSQL("mysql", "com.mysql.cj.jdbc.Driver"),
+        H2_MEM("h2-mem", "org.h2.Driver"),
+        H2_FILE("h2-file", "org.h2.Driver");
+
+        public final String key, driver;
+
+        Mode(String key, String driver) {
+            this.key = key;
+            this.driver = driver;
+        }
+
+        public boolean embedded() {
+            return this != MYSQL;
+        }
+
+        static Mode parse(String value) {
+            for (Mode m : values()) {
+                if (m.key.equals(value.toLowerCase(Locale.ROOT))) return m;
+            }
+            throw new IllegalArgumentException("Unknown DB_MODE " + value + " (expected mysql, h2-mem or h2-file)");
+        }
+    }
+
+    // MySQL compatibility, lower-case identifiers as MySQL reports them
+    private static final String H2_OPTIONS = ";MODE=MySQL;DATABASE_TO_LOWER=TRUE";
+
+    private static final Mode MODE = Mode.parse(Config.get("DB_MODE", "mysql"));
+    private static final String DB_FILE = Config.get("DB_FILE", "./data/canteen");
+    private static final String URL = Config.get("DB_URL", defaultUrl(MODE));
+    private static final String USER = Config.get("DB_USER", MODE.embedded() ? "sa" : "root");
+    private static final String PASSWORD = Config.get("DB_PASSWORD", MODE.embedded() ? "" : "ZPBTQIvnrdEfwuFKCbHlyzCHTPsJJmIC"); // change to your DB password
+    private static final boolean BOOTSTRAP = Config.getBoolean("DB_BOOTSTRAP", MODE.embedded());
+
+    // Pool sizing; tune with the numbers from poolStats()
+    private static final int POOL_MIN_IDLE = Config.getInt("DB_POOL_MIN_IDLE", 2);
+    private static final int POOL_MAX_SIZE = Config.getInt("DB_POOL_MAX_SIZE", 10);
+    private static final long POOL_IDLE_TIMEOUT_MS = Config.getLong("DB_POOL_IDLE_TIMEOUT_MS", 300_000);
+    private static final long POOL_BORROW_TIMEOUT_MS = Config.getLong("DB_POOL_BORROW_TIMEOUT_MS", 5_000);
+    private static final long POOL_VALIDATE_AFTER_MS = Config.getLong("DB_POOL_VALIDATE_AFTER_MS", 30_000);
+    private static final int STATEMENT_CACHE_SIZE = Config.getInt("DB_STATEMENT_CACHE_SIZE", 64); // per connection, 0 = off
+
+    private static final ConnectionPool pool;
 
     static {
         try {
-            Class.forName("com.mysql.cj.jdbc.Driver");
-            System.out.println("MySQL Driver Registered Successfully");
+            Class.forName(MODE.driver);
+            System.out.println("Database mode " + MODE.key + ": " + MODE.driver + " registered");
         } catch (ClassNotFoundException e) {
-            System.err.println("Error: MySQL Driver not found!");
+            System.err.println("Error: JDBC driver " + MODE.driver + " not found!");
             e.printStackTrace();
         }
+        pool = new ConnectionPool(URL, USER, PASSWORD, POOL_MIN_IDLE, POOL_MAX_SIZE,
+                POOL_IDLE_TIMEOUT_MS, POOL_BORROW_TIMEOUT_MS, POOL_VALIDATE_AFTER_MS, 2, STATEMENT_CACHE_SIZE);
+        if (BOOTSTRAP) bootstrap();
     }
 
-    public static Connection getConnection() {
+    private static String defaultUrl(Mode mode) {
+        switch (mode) {
+            // DB_CLOSE_DELAY=-1 keeps the database alive while the pool has no open connection
+            case H2_MEM: return "jdbc:h2:mem:" + Config.get("DB_NAME", "canteen") + H2_OPTIONS + ";DB_CLOSE_DELAY=-1";
+            case H2_FILE: return "jdbc:h2:file:" + DB_FILE + H2_OPTIONS;
+            default: return "jdbc:mysql://mysql.railway.internal:3306/railway?useSSL=false&serverTimezone=UTC";
+        }
+    }
+
+    // Create the tables (schema.sql only uses CREATE ... IF NOT EXISTS, so restarts are harmless)
+    private static void bootstrap() {
+        try (Connection c = pool.borrow()) {
+            int n = SchemaLoader.apply(c, Path.of(SchemaLoader.DEFAULT_SCRIPT));
+            System.out.println("Database bootstrapped from " + SchemaLoader.DEFAULT_SCRIPT + " (" + n + " statements)");
+        } catch (Exception e) {
+            throw new IllegalStateException("Database bootstrap from " + SchemaLoader.DEFAULT_SCRIPT + " failed: " + e.getMessage(), e);
+        }
+    }
+
+    public static Mode mode() {
+        return MODE;
+    }
+
+    // A file kept with the data, named "<database>.<suffix>": next to the H2 file, or under
+    // ./data/ for MySQL. Null for h2-mem, which starts empty and must not pick up old files.
+    public static Path companionFile(String suffix) {
+        switch (MODE) {
+            case H2_MEM: return null;
+            case H2_FILE: return Path.of(DB_FILE + "." + suffix);
+            default: return Path.of("data", "canteen." + suffix);
+        }
+    }
+
+    // Borrow a pooled connection; closing it returns it to the pool.
+    // Throws SQLException when none frees up within the borrow timeout.
+    public static Connection getConnection() throws SQLException {
         try {
-            Connection con = DriverManager.getConnection(URL, USER, PASSWORD);
-            System.out.println("Database connection established");
-            return con;
+            return pool.borrow();
         } catch (SQLException e) {
-            System.err.println("Failed to connect to database!");
-            e.printStackTrace();
-            return null;
+            throw new SQLException("Failed to get database connection: " + e.getMessage() + " [" + pool.stats() + "]",
+                    e.getSQLState(), e.getErrorCode(), e);
         }
     }
+
+    public static ConnectionPool.PoolStats poolStats() {
+        return pool.stats();
+    }
 }
 
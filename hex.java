@@ -0,0 +1,53 @@
+// Hex.java
+
+// Lowercase hex encoding with lookup tables (no per-byte String.format)
+public final class Hex {
+
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+    private static final byte[] VALUES = new byte[128];
+
+    static {
+        java.util.Arrays.fill(VALUES, (byte) -1);
+        for (int i = 0; i < 16; i++) {
+            VALUES[DIGITS[i]] = (byte) i;
+            VALUES[Character.toUpperCase(DIGITS[i])] = (byte) i;
+        }
+    }
+
+    private Hex() {}
+
+    public static String encode(byte[] bytes) {
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0, j = 0; i < bytes.length; i++) {
+            int b = bytes[i] & 0xff;
+            out[j++] = DIGITS[b >>> 4];
+            out[j++] = DIGITS[b & 0x0f];
+        }
+        return new String(out);
+    }
+
+    public static byte[] decode(CharSequence hex) {
+        int len = hex.length();
+        if ((len & 1) != 0) throw new IllegalArgumentException("Odd-length hex string");
+        byte[] out = new byte[len / 2];
+        for (int i = 0; i < out.length; i++) {
+            int hi = digit(hex.charAt(2 * i)), lo = digit(hex.charAt(2 * i + 1));
+            out[i] = (byte) ((hi << 4) | lo);
+        }
+        return out;
+    }
+
+    public static boolean isHex(CharSequence s) {
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (ch >= 128 || VALUES[ch] < 0) return false;
+        }
+        return true;
+    }
+
+    private static int digit(char ch) {
+        int v = ch < 128 ? VALUES[ch] : -1;
+        if (v < 0) throw new IllegalArgumentException("Invalid hex digit '" + ch + "'");
+        return v;
+    }
+}
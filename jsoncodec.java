@@ -0,0 +1,89 @@
+// JsonCodec.java
+import com.google.gson.Gson;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+// Reads JSON request bodies straight from the exchange's InputStream into typed
+// request objects, and writes responses straight into the response stream as UTF-8,
+// without building the whole body as a String first. Bodies over the cap are refused.
+public class JsonCodec {
+
+    private final Gson gson;
+    private final long maxBodyBytes;
+
+    // Request body over the size cap (answer 413)
+    public static class PayloadTooLargeException extends RuntimeException {
+        public PayloadTooLargeException(long limit) {
+            super("Request body exceeds " + limit + " bytes");
+        }
+    }
+
+    public JsonCodec(Gson gson, long maxBodyBytes) {
+        this.gson = gson;
+        this.maxBodyBytes = maxBodyBytes;
+    }
+
+    public long maxBodyBytes() {
+        return maxBodyBytes;
+    }
+
+    // Parse the body as the given type. Throws IllegalArgumentException for an empty
+    // body, JsonParseException for malformed JSON, PayloadTooLargeException over the cap.
+    public <T> T read(HttpExchange exchange, Class<T> type) throws IOException {
+        String length = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (length != null) {
+            try {
+                if (Long.parseLong(length.trim()) > maxBodyBytes) throw new PayloadTooLargeException(maxBodyBytes);
+            } catch (NumberFormatException ignored) {
+                // chunked or bogus: the limited stream below still enforces the cap
+            }
+        }
+        T value;
+        try (Reader in = new InputStreamReader(new LimitedInputStream(exchange.getRequestBody(), maxBodyBytes), StandardCharsets.UTF_8)) {
+            value = gson.fromJson(in, type);
+        }
+        if (value == null) throw new IllegalArgumentException("Missing request body");
+        return value;
+    }
+
+    // Send status + headers, then serialize the value into the (chunked) response body
+    public void write(HttpExchange exchange, int statusCode, Object value) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(statusCode, 0);
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), 8192)) {
+            gson.toJson(value, out);
+        }
+    }
+
+    // Fails the read once more than limit bytes have come through
+    static final class LimitedInputStream extends FilterInputStream {
+        private final long limit;
+        private long count;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) advance(1);
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buf, int off, int len) throws IOException {
+            int n = super.read(buf, off, len);
+            if (n > 0) advance(n);
+            return n;
+        }
+
+        private void advance(long n) {
+            count += n;
+            if (count > limit) throw new PayloadTooLargeException(limit);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+// EmbeddedCanteen.java
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+
+// Starts CanteenAPIService in this JVM against an in-memory H2 database (DB_MODE=h2-mem,
+// built from schema.sql) seeded with students and a menu, for load tests that must not
+// touch MySQL. LOADTEST_DB_MODE picks another mode, e.g. h2-file. startServer applies
+// the migrations and checks the hot query plans before it listens.
+public class EmbeddedCanteen {
+
+    // Every seeded student ("student<N>@college.edu") has this password
+    public static final String PASSWORD = "lunch-rush";
+
+    // Must run before DBConnection or CanteenAPIService are first touched
+    public static void start(int port, int students, int menuItems) throws Exception {
+        System.setProperty("DB_MODE", Config.get("LOADTEST_DB_MODE", "h2-mem"));
+        System.setProperty("DB_NAME", "canteen_load");
+        System.setProperty("PORT", String.valueOf(port));
+        // A lunch rush in minutes would fill real slot capacities almost immediately
+        System.setProperty("SLOT_CAPACITY", Config.get("SLOT_CAPACITY", "1000000"));
+
+        seed(students, menuItems); // DBConnection creates the tables on first use
+        CanteenAPIService.startServer();
+    }
+
+    private static void seed(int students, int menuItems) throws Exception {
+        // One PBKDF2 hash shared by every row: salts differ per hash, not per user, but
+        // hashing thousands of passwords here would dominate start-up
+        String hash = Passwords.shared().hash(PASSWORD);
+        try (Connection c = Dao.connection()) {
+            c.setAutoCommit(false);
+            try (PreparedStatement ps = c.prepareStatement("INSERT INTO users (name, email, password, wallet) VALUES (?, ?, ?, ?)")) {
+                for (int i = 1; i <= students; i++) {
+                    ps.setString(1, "Student " + i);
+                    ps.setString(2, "student" + i + "@college.edu");
+                    ps.setString(3, hash);
+                    ps.setDouble(4, 1000);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            try (PreparedStatement ps = c.prepareStatement("INSERT INTO menu_items (name, description, price, available) VALUES (?, ?, ?, TRUE)")) {
+                for (int i = 1; i <= menuItems; i++) {
+                    ps.setString(1, "Dish " + i);
+                    ps.setString(2, "Today's dish number " + i);
+                    ps.setDouble(3, 20 + (i * 37) % 150);
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+            c.commit();
+        }
+    }
+}
@@ -0,0 +1,269 @@
+// LoadTest.java
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+// Lunch-rush load generator: a burst of logins at the bell, then an open-model mix of
+// menu polling, logins, order placement (most followed by a payment) and review reads,
+// each arriving as a Poisson process at its own rate. Latency is measured from the
+// intended send time, so a stalled server shows up in the percentiles instead of
+// silently lowering the offered load.
+//
+// By default it starts the API in-process on embedded H2 (EmbeddedCanteen);
+// LOADTEST_TARGET=http://host:port drives an already running server instead.
+public class LoadTest {
+
+    private static final String TARGET = Config.get("LOADTEST_TARGET", "");
+    private static final int PORT = Config.getInt("LOADTEST_PORT", 18080);
+    private static final int DURATION_S = Config.getInt("LOADTEST_DURATION_S", 60);
+    private static final int STUDENTS = Config.getInt("LOADTEST_STUDENTS", 2000);
+    private static final int MENU_ITEMS = Config.getInt("LOADTEST_MENU_ITEMS", 40);
+    private static final int LOGIN_BURST = Config.getInt("LOADTEST_LOGIN_BURST", 300);
+    private static final double LOGIN_RPS = Double.parseDouble(Config.get("LOADTEST_LOGIN_RPS", "5"));
+    private static final double MENU_RPS = Double.parseDouble(Config.get("LOADTEST_MENU_RPS", "200"));
+    private static final double ORDER_RPS = Double.parseDouble(Config.get("LOADTEST_ORDER_RPS", "40"));
+    private static final double PAY_RATIO = Double.parseDouble(Config.get("LOADTEST_PAY_RATIO", "0.8"));
+    private static final double REVIEW_RPS = Double.parseDouble(Config.get("LOADTEST_REVIEW_RPS", "60"));
+
+    private final String base;
+    private final HttpClient client;
+    private final ExecutorService workers;
+    private final AtomicReferenceArray<String> tokens = new AtomicReferenceArray<>(STUDENTS + 1);
+    private final Map<String, Scenario> scenarios = new ConcurrentHashMap<>();
+    private final List<Integer> menuIds = new ArrayList<>();
+    private final List<String> slots = new ArrayList<>();
+    private volatile String menuEtag;
+
+    // Results for one request type
+    static final class Scenario {
+        final String name;
+        final Metrics.Histogram latency = new Metrics.Histogram();
+        final LongAdder errors = new LongAdder();
+        final LongAdder skipped = new LongAdder();
+        final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+
+        Scenario(String name) {
+            this.name = name;
+        }
+
+        void record(long intendedNanos, int status) {
+            latency.recordMicros((System.nanoTime() - intendedNanos) / 1_000);
+            statuses.computeIfAbsent(status, k -> new LongAdder()).increment();
+            if (status <= 0 || status >= 500) errors.increment();
+        }
+    }
+
+    LoadTest(String base) {
+        this.base = base;
+        ExecutorService virtual = RequestExecutor.newVirtualThreadExecutor();
+        this.workers = virtual != null ? virtual : Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "loadtest-client");
+            t.setDaemon(true);
+            return t;
+        });
+        this.client = HttpClient.newBuilder()
+                .executor(workers)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        if (virtual == null) System.err.println("Virtual threads not available, using a cached thread pool");
+    }
+
+    public static void main(String[] args) throws Exception {
+        String base = TARGET;
+        if (base.isEmpty()) {
+            EmbeddedCanteen.start(PORT, STUDENTS, MENU_ITEMS);
+            base = "http://localhost:" + PORT;
+        }
+        LoadTest test = new LoadTest(base);
+        test.discover();
+        test.run();
+        test.report(System.out);
+        System.exit(0);
+    }
+
+    // Menu ids and pickup slots to order against
+    private void discover() throws Exception {
+        for (JsonElement e : get("/api/menu").getAsJsonArray()) menuIds.add(e.getAsJsonObject().get("id").getAsInt());
+        for (JsonElement e : get("/api/slots").getAsJsonArray()) slots.add(e.getAsJsonObject().get("slot").getAsString());
+        if (menuIds.isEmpty() || slots.isEmpty()) throw new IllegalStateException("Server has no menu items or pickup slots");
+    }
+
+    private JsonElement get(String path) throws Exception {
+        HttpResponse<String> r = client.send(HttpRequest.newBuilder(URI.create(base + path)).build(), HttpResponse.BodyHandlers.ofString());
+        return JsonParser.parseString(r.body());
+    }
+
+    private void run() throws InterruptedException {
+        System.out.printf("Driving %s for %d s: burst=%d logins, login=%.0f/s menu=%.0f/s order=%.0f/s (pay %.0f%%) review=%.0f/s%n",
+                base, DURATION_S, LOGIN_BURST, LOGIN_RPS, MENU_RPS, ORDER_RPS, PAY_RATIO * 100, REVIEW_RPS);
+
+        // The bell rings: everyone logs in at once
+        long now = System.nanoTime();
+        for (int i = 1; i <= LOGIN_BURST; i++) {
+            int student = i;
+            workers.execute(() -> login(student, now));
+        }
+
+        long end = now + TimeUnit.SECONDS.toNanos(DURATION_S);
+        List<Thread> arrivals = new ArrayList<>();
+        arrivals.add(arrivals("login", LOGIN_RPS, end, this::login));
+        arrivals.add(arrivals("menu", MENU_RPS, end, this::pollMenu));
+        arrivals.add(arrivals("order", ORDER_RPS, end, this::placeOrder));
+        arrivals.add(arrivals("review", REVIEW_RPS, end, this::readReviews));
+        for (Thread t : arrivals) t.join();
+
+        workers.shutdown();
+        workers.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    // Poisson arrivals: exponential gaps with the given mean rate, dispatched on schedule
+    // whether or not earlier requests have finished
+    private Thread arrivals(String name, double ratePerSecond, long endNanos, LongConsumer request) {
+        Thread t = new Thread(() -> {
+            if (ratePerSecond <= 0) return;
+            long next = System.nanoTime();
+            while (next < endNanos) {
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                long intended = next;
+                workers.execute(() -> request.accept(intended));
+                double gapSeconds = -Math.log(1 - ThreadLocalRandom.current().nextDouble()) / ratePerSecond;
+                next += (long) (gapSeconds * 1e9);
+            }
+        }, "loadtest-arrivals-" + name);
+        t.start();
+        return t;
+    }
+
+    // ---------------- Requests ----------------
+
+    private void login(long intended) {
+        login(1 + ThreadLocalRandom.current().nextInt(STUDENTS), intended);
+    }
+
+    private void login(int student, long intended) {
+        String body = "{\"email\":\"student" + student + "@college.edu\",\"password\":\"" + EmbeddedCanteen.PASSWORD + "\"}";
+        HttpResponse<String> r = send("login", intended, post("/api/login", body).build());
+        if (r != null && r.statusCode() == 200) {
+            tokens.set(student, JsonParser.parseString(r.body()).getAsJsonObject().get("token").getAsString());
+        }
+    }
+
+    // Clients poll with the last ETag, as the web page does
+    private void pollMenu(long intended) {
+        HttpRequest.Builder req = HttpRequest.newBuilder(URI.create(base + "/api/menu")).header("Accept-Encoding", "gzip");
+        String etag = menuEtag;
+        if (etag != null) req.header("If-None-Match", etag);
+        HttpResponse<String> r = send("menu", intended, req.build());
+        if (r != null) r.headers().firstValue("ETag").ifPresent(e -> menuEtag = e);
+    }
+
+    private void placeOrder(long intended) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        // Orders come mostly from the crowd that logged in at the bell
+        int student = 1 + random.nextInt(LOGIN_BURST > 0 ? Math.min(LOGIN_BURST, STUDENTS) : STUDENTS);
+        String token = tokens.get(student);
+        if (token == null) {
+            scenario("order").skipped.increment(); // not logged in yet
+            return;
+        }
+        JsonObject order = new JsonObject();
+        order.addProperty("timeSlot", slots.get(random.nextInt(slots.size())));
+        JsonArray items = new JsonArray();
+        int lines = 1 + random.nextInt(3);
+        for (int i = 0; i < lines; i++) {
+            JsonObject line = new JsonObject();
+            line.addProperty("menuItemId", menuIds.get(random.nextInt(menuIds.size())));
+            line.addProperty("quantity", 1 + random.nextInt(2));
+            items.add(line);
+        }
+        order.add("items", items);
+
+        HttpResponse<String> r = send("order", intended, post("/api/orders", order.toString())
+                .header("Authorization", "Bearer " + token).build());
+        if (r == null || r.statusCode() != 200 || random.nextDouble() >= PAY_RATIO) return;
+
+        JsonObject placed = JsonParser.parseString(r.body()).getAsJsonObject().getAsJsonObject("order");
+        String payment = "{\"orderId\":" + placed.get("orderId").getAsInt()
+                + ",\"amount\":" + placed.get("totalAmount").getAsDouble() + ",\"method\":\"UPI\"}";
+        send("payment", System.nanoTime(), post("/api/payments", payment)
+                .header("Authorization", "Bearer " + token)
+                .header("Idempotency-Key", UUID.randomUUID().toString()).build());
+    }
+
+    private void readReviews(long intended) {
+        int menuItemId = menuIds.get(ThreadLocalRandom.current().nextInt(menuIds.size()));
+        send("review", intended, HttpRequest.newBuilder(URI.create(base + "/api/reviews?menuItemId=" + menuItemId)).build());
+    }
+
+    private HttpRequest.Builder post(String path, String json) {
+        return HttpRequest.newBuilder(URI.create(base + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json));
+    }
+
+    // Send and record; returns null on transport failure
+    private HttpResponse<String> send(String name, long intended, HttpRequest request) {
+        Scenario s = scenario(name);
+        try {
+            HttpResponse<String> r = client.send(request, HttpResponse.BodyHandlers.ofString());
+            s.record(intended, r.statusCode());
+            return r;
+        } catch (Exception e) {
+            s.record(intended, 0);
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private Scenario scenario(String name) {
+        return scenarios.computeIfAbsent(name, Scenario::new);
+    }
+
+    // ---------------- Report ----------------
+
+    private void report(PrintStream out) {
+        out.printf("%n%-8s %8s %8s %7s %9s %9s %9s %9s %9s  %s%n",
+                "request", "count", "req/s", "err%", "p50 ms", "p90 ms", "p99 ms", "p999 ms", "max ms", "statuses");
+        for (String name : List.of("login", "menu", "order", "payment", "review")) {
+            Scenario s = scenarios.get(name);
+            if (s == null) continue;
+            Metrics.Histogram h = s.latency;
+            long count = h.count();
+            out.printf("%-8s %8d %8.1f %6.2f%% %9.2f %9.2f %9.2f %9.2f %9.2f  %s%s%n",
+                    name, count, count / (double) DURATION_S,
+                    count == 0 ? 0 : 100.0 * s.errors.sum() / count,
+                    h.percentileMicros(0.5) / 1e3, h.percentileMicros(0.9) / 1e3,
+                    h.percentileMicros(0.99) / 1e3, h.percentileMicros(0.999) / 1e3, h.maxMicros() / 1e3,
+                    new TreeMap<>(s.statuses),
+                    s.skipped.sum() > 0 ? " skipped=" + s.skipped.sum() : "");
+        }
+    }
+}
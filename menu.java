@@ -1,10 +1,32 @@
 // Menu.java
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class Menu {
 
+    // How long a catalog snapshot is trusted before it is reloaded in the background,
+    // to pick up edits made directly in the database
+    private static final long CACHE_TTL_MS = Config.getLong("MENU_CACHE_TTL_MS", 60_000);
+
+    // Shared by all Menu instances; readers only ever do a volatile read
+    private static volatile Catalog catalog;
+    private static final Object reloadLock = new Object();
+    private static final AtomicBoolean refreshing = new AtomicBoolean();
+    // Background reloads do blocking JDBC work, so they get their own thread rather than the common pool
+    private static final ExecutorService refresher = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "menu-refresh");
+        t.setDaemon(true);
+        return t;
+    });
+
     public static class MenuItem {
         public int id;
         public String name;
@@ -21,110 +43,170 @@ public class Menu {
             this.available = available;
             this.createdAt = createdAt;
         }
+
+        // Maps a menu_items row
+        static final Dao.RowMapper<MenuItem> MAPPER = rs -> {
+            int id = rs.findColumn("id"), name = rs.findColumn("name"), description = rs.findColumn("description"),
+                price = rs.findColumn("price"), available = rs.findColumn("available"), createdAt = rs.findColumn("created_at");
+            return r -> new MenuItem(r.getInt(id), r.getString(name), r.getString(description),
+                    r.getDouble(price), r.getBoolean(available), r.getTimestamp(createdAt));
+        };
+    }
+
+    // Immutable snapshot of menu_items. Items are shared between readers and must not be modified.
+    static final class Catalog {
+        final long version;
+        final long loadedAt;
+        final List<MenuItem> all;       // ordered by name
+        final List<MenuItem> available; // ordered by name
+        final Map<Integer, MenuItem> byId;
+
+        Catalog(long version, List<MenuItem> all) {
+            this.version = version;
+            this.loadedAt = System.currentTimeMillis();
+            List<MenuItem> avail = new ArrayList<>();
+            Map<Integer, MenuItem> index = new HashMap<>(all.size() * 2);
+            for (MenuItem item : all) {
+                index.put(item.id, item);
+                if (item.available) avail.add(item);
+            }
+            this.all = Collections.unmodifiableList(all);
+            this.available = Collections.unmodifiableList(avail);
+            this.byId = Collections.unmodifiableMap(index);
+        }
+
+        boolean isStale() {
+            return System.currentTimeMillis() - loadedAt > CACHE_TTL_MS;
+        }
+    }
+
+    // Version of the current catalog; changes only when the menu content changes
+    public static long catalogVersion() throws SQLException {
+        return catalog().version;
+    }
+
+    // Drop the snapshot so the next read reloads from the database
+    public static void invalidateCache() {
+        catalog = null;
+    }
+
+    static Catalog catalog() throws SQLException {
+        Catalog c = catalog;
+        if (c == null) return reload();
+        if (c.isStale() && refreshing.compareAndSet(false, true)) {
+            // Serve the stale snapshot while one background reload runs
+            refresher.execute(() -> {
+                try {
+                    reload();
+                } catch (SQLException e) {
+                    System.err.println("Menu cache refresh failed: " + e.getMessage());
+                } finally {
+                    refreshing.set(false);
+                }
+            });
+        }
+        return c;
+    }
+
+    // Reload from the database and swap the snapshot in. Serialized so that a slow
+    // reload can never overwrite the result of one that started after a later write.
+    private static Catalog reload() throws SQLException {
+        synchronized (reloadLock) {
+            List<MenuItem> items = Dao.query("SELECT * FROM menu_items ORDER BY name", Dao.NO_PARAMS, MenuItem.MAPPER);
+            Catalog previous = catalog;
+            long version;
+            if (previous == null) version = System.currentTimeMillis();
+            else if (sameContent(previous.all, items)) version = previous.version;
+            else version = previous.version + 1;
+            Catalog next = new Catalog(version, items);
+            catalog = next;
+            return next;
+        }
+    }
+
+    // Write-through after a successful write; if the reload fails, fall back to a cold reload on next read
+    private static void refreshAfterWrite() {
+        try {
+            reload();
+        } catch (SQLException e) {
+            System.err.println("Menu cache reload failed, invalidating: " + e.getMessage());
+            invalidateCache();
+        }
+    }
+
+    private static boolean sameContent(List<MenuItem> a, List<MenuItem> b) {
+        if (a.size() != b.size()) return false;
+        for (int i = 0; i < a.size(); i++) {
+            MenuItem x = a.get(i), y = b.get(i);
+            if (x.id != y.id || x.available != y.available || Double.compare(x.price, y.price) != 0
+                    || !Objects.equals(x.name, y.name) || !Objects.equals(x.description, y.description)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     // Add a menu item
     public int addMenuItem(String name, String description, double price, boolean available) throws SQLException {
         String sql = "INSERT INTO menu_items (name, description, price, available) VALUES (?, ?, ?, ?)";
-        try (Connection c = DBConnection.getConnection();
+        int id;
+        try (Connection c = Dao.connection();
              PreparedStatement ps = c.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
             ps.setString(1, name);
             ps.setString(2, description);
             ps.setDouble(3, price);
             ps.setBoolean(4, available);
-            ps.executeUpdate();
-            try (ResultSet g = ps.getGeneratedKeys()) {
-                if (g.next()) return g.getInt(1);
-            }
-            return -1;
+            id = Dao.timed(sql, () -> {
+                ps.executeUpdate();
+                try (ResultSet g = ps.getGeneratedKeys()) {
+                    return g.next() ? g.getInt(1) : -1;
+                }
+            });
         }
+        // After the connection is back in the pool, so the reload never needs a second one
+        refreshAfterWrite();
+        return id;
     }
 
-    // Get menu item by ID
+    // Get menu item by ID (falls back to the database for items added outside the app)
     public MenuItem getMenuItemById(int id) throws SQLException {
-        String sql = "SELECT * FROM menu_items WHERE id = ?";
-        try (Connection c = DBConnection.getConnection();
-             PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setInt(1, id);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    return new MenuItem(
-                            rs.getInt("id"),
-                            rs.getString("name"),
-                            rs.getString("description"),
-                            rs.getDouble("price"),
-                            rs.getBoolean("available"),
-                            rs.getTimestamp("created_at")
-                    );
-                }
-            }
-        }
-        return null;
+        MenuItem cached = catalog().byId.get(id);
+        if (cached != null) return cached;
+
+        return Dao.queryOne("SELECT * FROM menu_items WHERE id = ?", ps -> ps.setInt(1, id), MenuItem.MAPPER);
     }
 
-    // List all menu items
+    // List all menu items (served from the catalog snapshot)
     public List<MenuItem> listMenuItems() throws SQLException {
-        List<MenuItem> list = new ArrayList<>();
-        String sql = "SELECT * FROM menu_items ORDER BY name";
-        try (Connection c = DBConnection.getConnection();
-             PreparedStatement ps = c.prepareStatement(sql);
-             ResultSet rs = ps.executeQuery()) {
-            while (rs.next()) {
-                list.add(new MenuItem(
-                        rs.getInt("id"),
-                        rs.getString("name"),
-                        rs.getString("description"),
-                        rs.getDouble("price"),
-                        rs.getBoolean("available"),
-                        rs.getTimestamp("created_at")
-                ));
-            }
-        }
-        return list;
+        return catalog().all;
     }
 
     // Update menu item
     public boolean updateMenuItem(int id, String name, String description, double price, boolean available) throws SQLException {
         String sql = "UPDATE menu_items SET name=?, description=?, price=?, available=? WHERE id=?";
-        try (Connection c = DBConnection.getConnection();
-             PreparedStatement ps = c.prepareStatement(sql)) {
+        boolean updated = Dao.update(sql, ps -> {
             ps.setString(1, name);
             ps.setString(2, description);
             ps.setDouble(3, price);
             ps.setBoolean(4, available);
             ps.setInt(5, id);
-            return ps.executeUpdate() > 0;
-        }
+        }) > 0;
+        if (updated) refreshAfterWrite();
+        return updated;
     }
 
     // Delete menu item by ID
     public boolean deleteMenuItem(int id) throws SQLException {
-        String sql = "DELETE FROM menu_items WHERE id=?";
-        try (Connection c = DBConnection.getConnection();
-             PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setInt(1, id);
-            return ps.executeUpdate() > 0;
+        boolean deleted = Dao.update("DELETE FROM menu_items WHERE id=?", ps -> ps.setInt(1, id)) > 0;
+        if (deleted) {
+            Review.forgetMenuItem(id); // the item's reviews were deleted with it
+            refreshAfterWrite();
         }
+        return deleted;
     }
 
-    // Get available menu items only
+    // Get available menu items only (served from the catalog snapshot)
     public List<MenuItem> getAvailableMenuItems() throws SQLException {
-        List<MenuItem> list = new ArrayList<>();
-        String sql = "SELECT * FROM menu_items WHERE available = true ORDER BY name";
-        try (Connection c = DBConnection.getConnection();
-             PreparedStatement ps = c.prepareStatement(sql);
-             ResultSet rs = ps.executeQuery()) {
-            while (rs.next()) {
-                list.add(new MenuItem(
-                        rs.getInt("id"),
-                        rs.getString("name"),
-                        rs.getString("description"),
-                        rs.getDouble("price"),
-                        rs.getBoolean("available"),
-                        rs.getTimestamp("created_at")
-                ));
-            }
-        }
-        return list;
+        return catalog().available;
     }
 }
\ No newline at end of file
@@ -0,0 +1,247 @@
+// Metrics.java
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+// Latency histograms, throughput and error counts for HTTP handlers and JDBC statements,
+// plus gauges registered by other components, rendered in Prometheus text format.
+// Recording is lock-free: a histogram is a fixed array of atomic bucket counters.
+public class Metrics {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private static final Map<String, Timer> httpTimers = new ConcurrentHashMap<>();
+    private static final Map<String, Timer> sqlTimers = new ConcurrentHashMap<>();
+    private static final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+
+    // A JDBC call run under Metrics.sql(...)
+    @FunctionalInterface
+    public interface SqlCall<T> {
+        T call() throws SQLException;
+    }
+
+    // ---------------- Histogram ----------------
+    // HDR-style log-linear buckets over microseconds: values below 64 get exact buckets,
+    // above that each power of two is split into 32 sub-buckets (about 3% relative error).
+    // Values are capped at 2^37-1 us (~38 hours).
+    public static final class Histogram {
+        private static final int SUB_BITS = 5;
+        private static final int SUB_COUNT = 1 << SUB_BITS;
+        private static final int MAX_SHIFT = 31;
+        private static final long MAX_VALUE = ((long) (2 * SUB_COUNT) << MAX_SHIFT) - 1;
+
+        private final AtomicLongArray buckets = new AtomicLongArray((MAX_SHIFT + 2) * SUB_COUNT);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumMicros = new LongAdder();
+        private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+        public void recordMicros(long micros) {
+            long v = Math.max(0, Math.min(micros, MAX_VALUE));
+            buckets.incrementAndGet(indexOf(v));
+            count.increment();
+            sumMicros.add(v);
+            maxMicros.accumulate(v);
+        }
+
+        public long count() {
+            return count.sum();
+        }
+
+        public long sumMicros() {
+            return sumMicros.sum();
+        }
+
+        public long maxMicros() {
+            return maxMicros.get();
+        }
+
+        // Upper bound of the bucket holding the q-th quantile, in microseconds
+        public long percentileMicros(double q) {
+            long total = count.sum();
+            if (total == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(q * total));
+            long seen = 0;
+            for (int i = 0; i < buckets.length(); i++) {
+                seen += buckets.get(i);
+                if (seen >= rank) return Math.min(upperBound(i), maxMicros());
+            }
+            return maxMicros();
+        }
+
+        static int indexOf(long v) {
+            if (v < 2 * SUB_COUNT) return (int) v;
+            int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+            return (shift + 1) * SUB_COUNT + (int) ((v >>> shift) & (SUB_COUNT - 1));
+        }
+
+        static long upperBound(int index) {
+            if (index < 2 * SUB_COUNT) return index;
+            int shift = index / SUB_COUNT - 1;
+            long lower = (long) (SUB_COUNT + index % SUB_COUNT) << shift;
+            return lower + (1L << shift) - 1;
+        }
+    }
+
+    public static final class Timer {
+        public final Histogram latency = new Histogram();
+        public final LongAdder errors = new LongAdder();
+
+        public void record(long startNanos, boolean ok) {
+            latency.recordMicros((System.nanoTime() - startNanos) / 1_000);
+            if (!ok) errors.increment();
+        }
+    }
+
+    private static final class Gauge {
+        final String help;
+        final DoubleSupplier value;
+
+        Gauge(String help, DoubleSupplier value) {
+            this.help = help;
+            this.value = value;
+        }
+    }
+
+    // ---------------- Recording ----------------
+
+    public static Timer httpTimer(String handler) {
+        return httpTimers.computeIfAbsent(handler, k -> new Timer());
+    }
+
+    public static Timer sqlTimer(String call) {
+        return sqlTimers.computeIfAbsent(call, k -> new Timer());
+    }
+
+    // Time one JDBC call; an exception counts as an error
+    public static <T> T sql(String name, SqlCall<T> call) throws SQLException {
+        Timer timer = sqlTimer(name);
+        long start = System.nanoTime();
+        boolean ok = false;
+        try {
+            T result = call.call();
+            ok = true;
+            return result;
+        } finally {
+            timer.record(start, ok);
+        }
+    }
+
+    // A handler that may respond after handle() returns. It returns null if it has already
+    // responded, otherwise a stage completed with the status once the response is sent.
+    public interface AsyncHandler {
+        CompletionStage<Integer> handle(HttpExchange exchange) throws IOException;
+    }
+
+    // Wrap a handler so each exchange is timed under the given name. Errors are
+    // exceptions and 5xx responses.
+    public static HttpHandler instrument(String name, HttpHandler handler) {
+        Timer timer = httpTimer(name);
+        return exchange -> {
+            long start = System.nanoTime();
+            boolean ok = false;
+            try {
+                handler.handle(exchange);
+                ok = exchange.getResponseCode() < 500;
+            } finally {
+                timer.record(start, ok);
+            }
+        };
+    }
+
+    // Same, timed until the asynchronous response is sent
+    public static HttpHandler instrumentAsync(String name, AsyncHandler handler) {
+        Timer timer = httpTimer(name);
+        return exchange -> {
+            long start = System.nanoTime();
+            CompletionStage<Integer> sent;
+            try {
+                sent = handler.handle(exchange);
+            } catch (IOException | RuntimeException e) {
+                timer.record(start, false);
+                throw e;
+            }
+            if (sent == null) timer.record(start, exchange.getResponseCode() < 500);
+            else sent.whenComplete((status, t) -> timer.record(start, t == null && status < 500));
+        };
+    }
+
+    // Register a value read at scrape time (pool sizes, queue depths, ...)
+    public static void gauge(String name, String help, DoubleSupplier value) {
+        gauges.put(name, new Gauge(help, value));
+    }
+
+    // ---------------- Exposition ----------------
+
+    public static String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        writeTimers(out, "canteen_http_request", "HTTP request latency by handler", "handler", httpTimers);
+        writeTimers(out, "canteen_db_call", "JDBC statement latency", "call", sqlTimers);
+        for (Map.Entry<String, Gauge> e : new TreeMap<>(gauges).entrySet()) {
+            double value;
+            try {
+                value = e.getValue().value.getAsDouble();
+            } catch (RuntimeException ex) {
+                continue; // component not started
+            }
+            out.append("# HELP ").append(e.getKey()).append(' ').append(e.getValue().help).append('\n');
+            out.append("# TYPE ").append(e.getKey()).append(" gauge\n");
+            out.append(e.getKey()).append(' ').append(format(value)).append('\n');
+        }
+        return out.toString();
+    }
+
+    private static void writeTimers(StringBuilder out, String prefix, String help, String label, Map<String, Timer> timers) {
+        if (timers.isEmpty()) return;
+        List<String> names = new ArrayList<>(new TreeMap<>(timers).keySet());
+
+        out.append("# HELP ").append(prefix).append("_seconds ").append(help).append('\n');
+        out.append("# TYPE ").append(prefix).append("_seconds summary\n");
+        for (String name : names) {
+            Histogram h = timers.get(name).latency;
+            String labels = label + "=\"" + escape(name) + "\"";
+            for (double q : QUANTILES) {
+                out.append(prefix).append("_seconds{").append(labels).append(",quantile=\"").append(q).append("\"} ")
+                   .append(format(h.percentileMicros(q) / 1e6)).append('\n');
+            }
+            out.append(prefix).append("_seconds_sum{").append(labels).append("} ").append(format(h.sumMicros() / 1e6)).append('\n');
+            out.append(prefix).append("_seconds_count{").append(labels).append("} ").append(h.count()).append('\n');
+        }
+
+        out.append("# HELP ").append(prefix).append("_seconds_max Slowest observed call\n");
+        out.append("# TYPE ").append(prefix).append("_seconds_max gauge\n");
+        for (String name : names) {
+            out.append(prefix).append("_seconds_max{").append(label).append("=\"").append(escape(name)).append("\"} ")
+               .append(format(timers.get(name).latency.maxMicros() / 1e6)).append('\n');
+        }
+
+        out.append("# HELP ").append(prefix).append("_errors_total Failed calls\n");
+        out.append("# TYPE ").append(prefix).append("_errors_total counter\n");
+        for (String name : names) {
+            out.append(prefix).append("_errors_total{").append(label).append("=\"").append(escape(name)).append("\"} ")
+               .append(timers.get(name).errors.sum()).append('\n');
+        }
+    }
+
+    private static String format(double v) {
+        if (v == Math.rint(v) && Math.abs(v) < 1e15) return Long.toString((long) v);
+        return Double.toString(v);
+    }
+
+    private static String escape(String s) {
+        return s.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
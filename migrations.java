@@ -0,0 +1,160 @@
+// Migrations.java
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+// Versioned schema changes: migrations/V<number>__<description>.sql, applied in version
+// order and recorded in schema_migrations so each runs once per database. Runs at
+// server start after the base schema exists.
+//
+// MySQL commits DDL as it goes, so a migration that fails halfway can't be rolled back.
+// To make the rerun safe, errors saying a step is already done (column or index exists,
+// primary key already defined or already dropped) are skipped.
+public class Migrations {
+
+    public static final String DIRECTORY = Config.get("MIGRATIONS_DIR", "migrations");
+
+    private static final Pattern FILE_NAME = Pattern.compile("V(\\d+)__(\\w+)\\.sql");
+
+    private static final String CREATE_TABLE =
+            "CREATE TABLE IF NOT EXISTS schema_migrations (" +
+            "version INT PRIMARY KEY, " +
+            "description VARCHAR(200) NOT NULL, " +
+            "checksum CHAR(64) NOT NULL, " +
+            "execution_ms INT NOT NULL, " +
+            "applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP)";
+
+    public static class Migration {
+        public final int version;
+        public final String description;
+        public final Path file;
+
+        Migration(int version, String description, Path file) {
+            this.version = version;
+            this.description = description;
+            this.file = file;
+        }
+    }
+
+    // Apply pending migrations from the default directory; returns how many ran
+    public static int migrate() throws SQLException, IOException {
+        return migrate(Path.of(DIRECTORY));
+    }
+
+    public static int migrate(Path directory) throws SQLException, IOException {
+        List<Migration> migrations = scan(directory);
+        try (Connection c = Dao.connection()) {
+            try (Statement st = c.createStatement()) {
+                st.execute(CREATE_TABLE);
+            }
+            Map<Integer, String> applied = new HashMap<>();
+            for (String[] row : Dao.query(c, "SELECT version, checksum FROM schema_migrations", Dao.NO_PARAMS,
+                    rs -> r -> new String[]{r.getString(1), r.getString(2)})) {
+                applied.put(Integer.parseInt(row[0]), row[1]);
+            }
+
+            int ran = 0;
+            for (Migration m : migrations) {
+                String script = Files.readString(m.file, StandardCharsets.UTF_8);
+                String checksum = sha256(script);
+                String recorded = applied.get(m.version);
+                if (recorded != null) {
+                    if (!recorded.equals(checksum)) {
+                        System.err.println("Migration V" + m.version + " was edited after it was applied; changes are not re-run");
+                    }
+                    continue;
+                }
+                long start = System.nanoTime();
+                apply(c, m, script);
+                int ms = (int) ((System.nanoTime() - start) / 1_000_000);
+                Dao.update(c, "INSERT INTO schema_migrations (version, description, checksum, execution_ms) VALUES (?, ?, ?, ?)", ps -> {
+                    ps.setInt(1, m.version);
+                    ps.setString(2, m.description);
+                    ps.setString(3, checksum);
+                    ps.setInt(4, ms);
+                });
+                if (!c.getAutoCommit()) c.commit();
+                System.out.println("Applied migration V" + m.version + " " + m.description + " (" + ms + " ms)");
+                ran++;
+            }
+            return ran;
+        }
+    }
+
+    // Migration files in version order. Throws IllegalStateException on a duplicate version.
+    static List<Migration> scan(Path directory) throws IOException {
+        TreeMap<Integer, Migration> byVersion = new TreeMap<>();
+        if (!Files.isDirectory(directory)) return new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Matcher m = FILE_NAME.matcher(file.getFileName().toString());
+                if (!m.matches()) continue;
+                Migration migration = new Migration(Integer.parseInt(m.group(1)), m.group(2).replace('_', ' '), file);
+                Migration clash = byVersion.put(migration.version, migration);
+                if (clash != null) {
+                    throw new IllegalStateException("Two migrations with version " + migration.version + ": "
+                            + clash.file.getFileName() + ", " + file.getFileName());
+                }
+            }
+        }
+        return new ArrayList<>(byVersion.values());
+    }
+
+    private static void apply(Connection c, Migration m, String script) throws SQLException {
+        try (Statement st = c.createStatement()) {
+            for (String sql : SchemaLoader.split(script)) {
+                try {
+                    st.execute(sql);
+                } catch (SQLException e) {
+                    if (!alreadyApplied(e)) {
+                        throw new SQLException("Migration V" + m.version + " failed at: " + sql, e.getSQLState(), e.getErrorCode(), e);
+                    }
+                    System.out.println("Migration V" + m.version + ": skipping, already present: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    // MySQL 1060/1061 (duplicate column / key name), 1068 (multiple primary keys), 1091 (can't drop,
+    // doesn't exist); H2 42121/42111 (column / index exists), 90017 (second primary key),
+    // 42112/90057 (index / constraint not found)
+    private static boolean alreadyApplied(SQLException e) {
+        switch (e.getErrorCode()) {
+            case 1060: case 1061: case 1068: case 1091:
+            case 42121: case 42111: case 90017: case 42112: case 90057:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static String sha256(String script) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            // Ignore line-ending differences between checkouts
+            return Hex.encode(md.digest(script.replace("\r\n", "\n").getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Migration job: java Migrations [directory]
+    public static void main(String[] args) throws Exception {
+        int n = migrate(Path.of(args.length > 0 ? args[0] : DIRECTORY));
+        System.out.println(n == 0 ? "Schema is up to date" : "Applied " + n + " migration(s)");
+    }
+}
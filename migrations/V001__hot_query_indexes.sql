@@ -0,0 +1,17 @@
+-- Indexes for the hot query paths. Each one leads with the filtered column and carries
+-- the sort/grouping columns after it, so the query is answered in index order.
+
+-- Slot counts and reports: orders of one day, excluding CANCELLED, grouped by slot
+CREATE INDEX idx_orders_created_status ON orders (created_at, status, time_slot);
+
+-- Review pages and streams: WHERE menu_item_id = ? ORDER BY created_at DESC, id DESC
+CREATE INDEX idx_reviews_item_created ON reviews (menu_item_id, created_at, id);
+
+-- The same listing by author
+CREATE INDEX idx_reviews_user_created ON reviews (user_id, created_at, id);
+
+-- Available dishes in name order
+CREATE INDEX idx_menu_items_available_name ON menu_items (available, name);
+
+-- Popularity: order count and quantity per menu item
+CREATE INDEX idx_order_items_item ON order_items (menu_item_id, quantity);
@@ -0,0 +1,8 @@
+-- Bring databases created from an older schema.sql up to date. schema.sql only
+-- creates missing tables, so columns added or widened since never reached them.
+
+-- PBKDF2 hashes are longer than the old 64-character SHA-256 hex
+ALTER TABLE users MODIFY password VARCHAR(255) NOT NULL;
+
+-- Client-supplied key that dedupes retried payment submissions
+ALTER TABLE payments ADD COLUMN idempotency_key VARCHAR(100) UNIQUE;
@@ -0,0 +1,11 @@
+-- Split each revenue rollup row into stripes (see RevenueRollup), so order transactions
+-- of the same day update different rows instead of queueing on one row lock.
+-- Existing rows become stripe 0.
+
+ALTER TABLE daily_revenue ADD COLUMN bucket TINYINT NOT NULL DEFAULT 0;
+ALTER TABLE daily_revenue DROP PRIMARY KEY;
+ALTER TABLE daily_revenue ADD PRIMARY KEY (report_date, bucket);
+
+ALTER TABLE monthly_revenue ADD COLUMN bucket TINYINT NOT NULL DEFAULT 0;
+ALTER TABLE monthly_revenue DROP PRIMARY KEY;
+ALTER TABLE monthly_revenue ADD PRIMARY KEY (month_start, bucket);
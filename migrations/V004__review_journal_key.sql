@@ -0,0 +1,5 @@
+-- Key of the review journal entry a row was written from (see ReviewQueue). Replay after
+-- a crash skips entries whose key is already here, so no review is inserted twice.
+-- Rows from before the journal keep NULL, which UNIQUE allows any number of.
+
+ALTER TABLE reviews ADD COLUMN journal_key CHAR(36) UNIQUE;
@@ -1,9 +1,82 @@
 // Review.java
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class Review {
 
+    // Rating histograms per menu item, loaded with one GROUP BY on first use and then
+    // kept current by add/update/deleteReview. Writers hold the read lock (they can run
+    // together); the initial load holds the write lock so no delta is lost or doubled.
+    private static final Map<Integer, RatingStats> ratingStats = new ConcurrentHashMap<>();
+    private static final ReentrantReadWriteLock statsLock = new ReentrantReadWriteLock();
+    private static volatile boolean statsLoaded;
+
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    public static final int MAX_PAGE_SIZE = 100;
+    public static final int MAX_COMMENT_LENGTH = 2000;
+    private static final int STREAM_CHUNK_SIZE = Config.getInt("REVIEW_STREAM_CHUNK_SIZE", 500);
+    private static final Gson gson = new Gson(); // same settings as the API, so streamed rows match the paged ones
+
+    // One page of reviews, newest first; pass nextCursor back to get the following page (null = last page)
+    public static class ReviewPage {
+        public List<ReviewModel> reviews;
+        public String nextCursor;
+
+        public ReviewPage(List<ReviewModel> reviews, String nextCursor) {
+            this.reviews = reviews;
+            this.nextCursor = nextCursor;
+        }
+    }
+
+    public static class RatingStats {
+        private final AtomicLongArray buckets = new AtomicLongArray(5); // index 0 = 1 star
+
+        void add(int rating, long delta) {
+            buckets.addAndGet(rating - 1, delta);
+        }
+
+        public long count() {
+            long n = 0;
+            for (int i = 0; i < 5; i++) n += buckets.get(i);
+            return n;
+        }
+
+        public RatingSummary snapshot(int menuItemId) {
+            long[] histogram = new long[5];
+            long count = 0, sum = 0;
+            for (int i = 0; i < 5; i++) {
+                histogram[i] = buckets.get(i);
+                count += histogram[i];
+                sum += histogram[i] * (i + 1);
+            }
+            return new RatingSummary(menuItemId, count, sum, histogram);
+        }
+    }
+
+    public static class RatingSummary {
+        public int menuItemId;
+        public long count, sum;
+        public double average;
+        public long[] histogram; // histogram[0] = number of 1-star reviews
+
+        public RatingSummary(int menuItemId, long count, long sum, long[] histogram) {
+            this.menuItemId = menuItemId;
+            this.count = count;
+            this.sum = sum;
+            this.average = count == 0 ? 0.0 : (double) sum / count;
+            this.histogram = histogram;
+        }
+    }
+
     public static class ReviewModel {
         public int id, userId, menuItemId, rating;
         public String comment;
@@ -23,95 +96,202 @@ public class Review {
             this(id, userId, menuItemId, rating, comment, createdAt);
             this.userName = userName;
         }
+
+        // Maps a reviews row joined with the author's name as user_name
+        static final Dao.RowMapper<ReviewModel> MAPPER = rs -> {
+            int id = rs.findColumn("id"), userId = rs.findColumn("user_id"), menuItemId = rs.findColumn("menu_item_id"),
+                rating = rs.findColumn("rating"), comment = rs.findColumn("comment"), createdAt = rs.findColumn("created_at"),
+                userName = rs.findColumn("user_name");
+            return r -> new ReviewModel(r.getInt(id), r.getInt(userId), r.getInt(menuItemId), r.getInt(rating),
+                    r.getString(comment), r.getTimestamp(createdAt), r.getString(userName));
+        };
     }
 
-    // Add a new review
+    // Add a new review. It is validated here and handed to ReviewQueue, which journals it
+    // and inserts it shortly after in a batch; the rating stats follow when it commits.
+    // Throws IllegalStateException when the queue is full.
     public boolean addReview(int userId, int menuItemId, int rating, String comment) throws SQLException {
         // Validate rating
         if (rating < 1 || rating > 5) {
             throw new IllegalArgumentException("Rating must be between 1 and 5");
         }
+        if (comment != null && comment.length() > MAX_COMMENT_LENGTH) {
+            throw new IllegalArgumentException("Comment must be at most " + MAX_COMMENT_LENGTH + " characters");
+        }
+        if (new Menu().getMenuItemById(menuItemId) == null) {
+            throw new IllegalArgumentException("Unknown menu item " + menuItemId);
+        }
 
-        String sql = "INSERT INTO reviews (user_id, menu_item_id, rating, comment) VALUES (?, ?, ?, ?)";
-        try (Connection c = DBConnection.getConnection(); 
-             PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setInt(1, userId); 
-            ps.setInt(2, menuItemId); 
-            ps.setInt(3, rating); 
-            ps.setString(4, comment);
-            return ps.executeUpdate() > 0;
+        try {
+            ReviewQueue.shared().submit(userId, menuItemId, rating, comment);
+        } catch (IOException e) {
+            throw new SQLException("Could not journal review", e);
         }
+        return true;
     }
 
-    // Get all reviews for a menu item with user names
-    public List<ReviewModel> getReviewsForMenuItem(int menuItemId) throws SQLException {
-        String sql = "SELECT r.*, u.name as user_name FROM reviews r JOIN users u ON r.user_id = u.id WHERE r.menu_item_id = ? ORDER BY r.created_at DESC";
-        List<ReviewModel> list = new ArrayList<>();
-        try (Connection c = DBConnection.getConnection(); 
-             PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setInt(1, menuItemId);
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    list.add(new ReviewModel(
-                        rs.getInt("id"), 
-                        rs.getInt("user_id"), 
-                        rs.getInt("menu_item_id"),
-                        rs.getInt("rating"), 
-                        rs.getString("comment"),
-                        rs.getTimestamp("created_at"),
-                        rs.getString("user_name")
-                    ));
+    // Write a batch of queued reviews in one transaction and count them in the rating stats.
+    // Replayed reviews that were committed before a crash are skipped.
+    static void insertReviews(List<ReviewQueue.Pending> batch) throws SQLException {
+        String sql = "INSERT INTO reviews (user_id, menu_item_id, rating, comment, journal_key) VALUES (?, ?, ?, ?, ?)";
+        ensureStatsLoaded();
+        statsLock.readLock().lock();
+        try (Connection c = Dao.connection()) {
+            c.setAutoCommit(false);
+            List<ReviewQueue.Pending> inserted = new ArrayList<>(batch.size());
+            try (PreparedStatement ps = c.prepareStatement(sql)) {
+                Set<String> stored = storedJournalKeys(c, batch);
+                for (ReviewQueue.Pending p : batch) {
+                    if (p.key != null && stored.contains(p.key)) continue;
+                    ps.setInt(1, p.userId);
+                    ps.setInt(2, p.menuItemId);
+                    ps.setInt(3, p.rating);
+                    ps.setString(4, p.comment);
+                    ps.setString(5, p.key);
+                    ps.addBatch();
+                    inserted.add(p);
                 }
+                if (!inserted.isEmpty()) Dao.timed(sql, ps::executeBatch);
+                c.commit();
+            } catch (SQLException | RuntimeException e) {
+                c.rollback();
+                throw e;
+            } finally {
+                c.setAutoCommit(true);
             }
+            for (ReviewQueue.Pending p : inserted) statsFor(p.menuItemId).add(p.rating, 1);
+        } finally {
+            statsLock.readLock().unlock();
+        }
+    }
+
+    // Keys of the replayed reviews in the batch that are already in the table
+    private static Set<String> storedJournalKeys(Connection c, List<ReviewQueue.Pending> batch) throws SQLException {
+        List<String> keys = new ArrayList<>();
+        for (ReviewQueue.Pending p : batch) {
+            if (p.replayed && p.key != null) keys.add(p.key);
         }
-        return list;
+        if (keys.isEmpty()) return Set.of();
+        String sql = "SELECT journal_key FROM reviews WHERE journal_key IN (" + String.join(", ", Collections.nCopies(keys.size(), "?")) + ")";
+        return new HashSet<>(Dao.query(c, sql, ps -> {
+            for (int i = 0; i < keys.size(); i++) ps.setString(i + 1, keys.get(i));
+        }, rs -> r -> r.getString(1)));
+    }
+
+    // Get all reviews for a menu item with user names
+    public List<ReviewModel> getReviewsForMenuItem(int menuItemId) throws SQLException {
+        String sql = "SELECT r.*, u.name as user_name FROM reviews r JOIN users u ON r.user_id = u.id WHERE r.menu_item_id = ? ORDER BY r.created_at DESC";
+        return Dao.query(sql, ps -> ps.setInt(1, menuItemId), ReviewModel.MAPPER);
     }
 
     // Get reviews by user
     public List<ReviewModel> getReviewsByUser(int userId) throws SQLException {
         String sql = "SELECT r.*, u.name as user_name FROM reviews r JOIN users u ON r.user_id = u.id WHERE r.user_id = ? ORDER BY r.created_at DESC";
-        List<ReviewModel> list = new ArrayList<>();
-        try (Connection c = DBConnection.getConnection(); 
-             PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setInt(1, userId);
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    list.add(new ReviewModel(
-                        rs.getInt("id"), 
-                        rs.getInt("user_id"), 
-                        rs.getInt("menu_item_id"),
-                        rs.getInt("rating"), 
-                        rs.getString("comment"),
-                        rs.getTimestamp("created_at"),
-                        rs.getString("user_name")
-                    ));
-                }
-            }
+        return Dao.query(sql, ps -> ps.setInt(1, userId), ReviewModel.MAPPER);
+    }
+
+    // Keyset-paginated reviews for a menu item
+    public ReviewPage getReviewsForMenuItem(int menuItemId, String cursor, int pageSize) throws SQLException {
+        return reviewPage("r.menu_item_id", menuItemId, cursor, pageSize);
+    }
+
+    // Keyset-paginated reviews by a user
+    public ReviewPage getReviewsByUser(int userId, String cursor, int pageSize) throws SQLException {
+        return reviewPage("r.user_id", userId, cursor, pageSize);
+    }
+
+    // Seek past the cursor on (created_at, id) instead of OFFSET, so deep pages cost the same as the first
+    private ReviewPage reviewPage(String filterColumn, int filterValue, String cursor, int pageSize) throws SQLException {
+        int limit = Math.max(1, Math.min(pageSize <= 0 ? DEFAULT_PAGE_SIZE : pageSize, MAX_PAGE_SIZE));
+        Object[] after = cursor == null || cursor.isEmpty() ? null : decodeCursor(cursor);
+
+        // One extra row tells us whether another page exists
+        List<ReviewModel> list = Dao.query(pageSql(filterColumn, after != null),
+                ps -> bindPage(ps, filterValue, after == null ? null : (Timestamp) after[0], after == null ? 0 : (Integer) after[1], limit + 1),
+                ReviewModel.MAPPER);
+        boolean more = list.size() > limit;
+        if (more) list.remove(limit);
+        String next = null;
+        if (more) {
+            ReviewModel last = list.get(list.size() - 1);
+            next = encodeCursor(last.createdAt, last.id);
+        }
+        return new ReviewPage(list, next);
+    }
+
+    // Page query: filter value, [created_at, created_at, id of the cursor row,] limit
+    static String pageSql(String filterColumn, boolean afterCursor) {
+        return "SELECT r.*, u.name as user_name FROM reviews r JOIN users u ON r.user_id = u.id WHERE " + filterColumn + " = ?" +
+                (afterCursor ? " AND (r.created_at < ? OR (r.created_at = ? AND r.id < ?))" : "") +
+                " ORDER BY r.created_at DESC, r.id DESC LIMIT ?";
+    }
+
+    private static void bindPage(PreparedStatement ps, int filterValue, Timestamp afterCreatedAt, int afterId, int limit) throws SQLException {
+        int p = 1;
+        ps.setInt(p++, filterValue);
+        if (afterCreatedAt != null) {
+            ps.setTimestamp(p++, afterCreatedAt);
+            ps.setTimestamp(p++, afterCreatedAt);
+            ps.setInt(p++, afterId);
+        }
+        ps.setInt(p, limit);
+    }
+
+    // Write every review for a menu item to out as a JSON array. Rows are read in keyset
+    // chunks of STREAM_CHUNK_SIZE and each chunk is written after its connection is back in
+    // the pool, so a slow client never holds a connection and memory stays bounded.
+    public int streamReviewsForMenuItem(int menuItemId, Writer out) throws SQLException, IOException {
+        return streamReviews("r.menu_item_id", menuItemId, out);
+    }
+
+    public int streamReviewsByUser(int userId, Writer out) throws SQLException, IOException {
+        return streamReviews("r.user_id", userId, out);
+    }
+
+    private int streamReviews(String filterColumn, int filterValue, Writer out) throws SQLException, IOException {
+        JsonWriter json = new JsonWriter(out);
+        json.beginArray();
+        int rows = 0;
+        ReviewModel last = null;
+        while (true) {
+            ReviewModel after = last;
+            List<ReviewModel> chunk = Dao.query(pageSql(filterColumn, after != null),
+                    ps -> bindPage(ps, filterValue, after == null ? null : after.createdAt, after == null ? 0 : after.id, STREAM_CHUNK_SIZE),
+                    ReviewModel.MAPPER);
+            for (ReviewModel r : chunk) gson.toJson(r, ReviewModel.class, json);
+            rows += chunk.size();
+            if (chunk.size() < STREAM_CHUNK_SIZE) break;
+            last = chunk.get(chunk.size() - 1);
+            json.flush();
+        }
+        json.endArray();
+        json.flush();
+        return rows;
+    }
+
+    // Opaque cursor: base64url("<epochSecond>.<nanos>.<id>") of the last row on the page
+    private static String encodeCursor(Timestamp createdAt, int id) {
+        long seconds = Math.floorDiv(createdAt.getTime(), 1000L);
+        String raw = seconds + "." + createdAt.getNanos() + "." + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Object[] decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = raw.split("\\.");
+            Timestamp ts = new Timestamp(Long.parseLong(parts[0]) * 1000L);
+            ts.setNanos(Integer.parseInt(parts[1]));
+            return new Object[]{ts, Integer.parseInt(parts[2])};
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor");
         }
-        return list;
     }
 
     // Get review by ID
     public Optional<ReviewModel> getReviewById(int reviewId) throws SQLException {
         String sql = "SELECT r.*, u.name as user_name FROM reviews r JOIN users u ON r.user_id = u.id WHERE r.id = ?";
-        try (Connection c = DBConnection.getConnection(); 
-             PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setInt(1, reviewId);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    return Optional.of(new ReviewModel(
-                        rs.getInt("id"), 
-                        rs.getInt("user_id"), 
-                        rs.getInt("menu_item_id"),
-                        rs.getInt("rating"), 
-                        rs.getString("comment"),
-                        rs.getTimestamp("created_at"),
-                        rs.getString("user_name")
-                    ));
-                }
-            }
-        }
-        return Optional.empty();
+        return Optional.ofNullable(Dao.queryOne(sql, ps -> ps.setInt(1, reviewId), ReviewModel.MAPPER));
     }
 
     // Update a review
@@ -121,69 +301,125 @@ public class Review {
         }
 
         String sql = "UPDATE reviews SET rating = ?, comment = ? WHERE id = ?";
-        try (Connection c = DBConnection.getConnection(); 
-             PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setInt(1, rating); 
-            ps.setString(2, comment); 
-            ps.setInt(3, reviewId);
-            return ps.executeUpdate() > 0;
+        ensureStatsLoaded();
+        statsLock.readLock().lock();
+        try (Connection c = Dao.connection()) {
+            c.setAutoCommit(false);
+            int[] previous = lockReviewRating(c, reviewId);
+            if (previous == null) {
+                c.rollback();
+                return false;
+            }
+            Dao.update(c, sql, ps -> {
+                ps.setInt(1, rating);
+                ps.setString(2, comment);
+                ps.setInt(3, reviewId);
+            });
+            c.commit();
+            RatingStats stats = statsFor(previous[0]);
+            stats.add(previous[1], -1);
+            stats.add(rating, 1);
+            return true;
+        } finally {
+            statsLock.readLock().unlock();
         }
     }
 
     // Delete a review
     public boolean deleteReview(int reviewId) throws SQLException {
         String sql = "DELETE FROM reviews WHERE id = ?";
-        try (Connection c = DBConnection.getConnection(); 
-             PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setInt(1, reviewId);
-            return ps.executeUpdate() > 0;
+        ensureStatsLoaded();
+        statsLock.readLock().lock();
+        try (Connection c = Dao.connection()) {
+            c.setAutoCommit(false);
+            int[] previous = lockReviewRating(c, reviewId);
+            if (previous == null) {
+                c.rollback();
+                return false;
+            }
+            Dao.update(c, sql, ps -> ps.setInt(1, reviewId));
+            c.commit();
+            statsFor(previous[0]).add(previous[1], -1);
+            return true;
+        } finally {
+            statsLock.readLock().unlock();
         }
     }
 
     // Get average rating for a menu item
     public double getAverageRating(int menuItemId) throws SQLException {
-        String sql = "SELECT AVG(rating) as avgRating FROM reviews WHERE menu_item_id = ?";
-        try (Connection c = DBConnection.getConnection(); 
-             PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setInt(1, menuItemId);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    double avg = rs.getDouble("avgRating");
-                    return rs.wasNull() ? 0.0 : avg;
-                }
-            }
-        }
-        return 0.0;
+        return getRatingSummary(menuItemId).average;
     }
 
     // Get rating count for a menu item
     public int getRatingCount(int menuItemId) throws SQLException {
-        String sql = "SELECT COUNT(*) as count FROM reviews WHERE menu_item_id = ?";
-        try (Connection c = DBConnection.getConnection(); 
-             PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setInt(1, menuItemId);
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    return rs.getInt("count");
-                }
-            }
-        }
-        return 0;
+        return (int) getRatingSummary(menuItemId).count;
     }
 
-    // Get rating distribution for a menu item
+    // Get rating distribution for a menu item (only ratings that occur)
     public Map<Integer, Integer> getRatingDistribution(int menuItemId) throws SQLException {
         Map<Integer, Integer> distribution = new HashMap<>();
-        String sql = "SELECT rating, COUNT(*) as count FROM reviews WHERE menu_item_id = ? GROUP BY rating ORDER BY rating DESC";
-        try (Connection c = DBConnection.getConnection(); 
-             PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setInt(1, menuItemId);
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    distribution.put(rs.getInt("rating"), rs.getInt("count"));
-                }
-            }
+        long[] histogram = getRatingSummary(menuItemId).histogram;
+        for (int rating = 5; rating >= 1; rating--) {
+            if (histogram[rating - 1] > 0) distribution.put(rating, (int) histogram[rating - 1]);
         }
         return distribution;
     }
+
+    // Count, sum and histogram for one menu item, from memory
+    public RatingSummary getRatingSummary(int menuItemId) throws SQLException {
+        ensureStatsLoaded();
+        RatingStats stats = ratingStats.get(menuItemId);
+        return stats == null ? new RatingSummary(menuItemId, 0, 0, new long[5]) : stats.snapshot(menuItemId);
+    }
+
+    // Rating summaries for every reviewed menu item in one call (for building the menu page)
+    public Map<Integer, RatingSummary> getAllRatingSummaries() throws SQLException {
+        ensureStatsLoaded();
+        Map<Integer, RatingSummary> all = new HashMap<>(ratingStats.size() * 2);
+        for (Map.Entry<Integer, RatingStats> e : ratingStats.entrySet()) {
+            all.put(e.getKey(), e.getValue().snapshot(e.getKey()));
+        }
+        return all;
+    }
+
+    private static RatingStats statsFor(int menuItemId) {
+        return ratingStats.computeIfAbsent(menuItemId, k -> new RatingStats());
+    }
+
+    // Returns {menu_item_id, rating} of a review, row-locked until the transaction ends; null if missing
+    private static int[] lockReviewRating(Connection c, int reviewId) throws SQLException {
+        String sql = "SELECT menu_item_id, rating FROM reviews WHERE id = ? FOR UPDATE";
+        return Dao.queryOne(c, sql, ps -> ps.setInt(1, reviewId), rs -> r -> new int[]{r.getInt(1), r.getInt(2)});
+    }
+
+    // Called once a menu item's delete has committed: its reviews went with it (ON DELETE
+    // CASCADE). The write lock waits out review writes still counting into its stats.
+    static void forgetMenuItem(int menuItemId) {
+        statsLock.writeLock().lock();
+        try {
+            ratingStats.remove(menuItemId);
+        } finally {
+            statsLock.writeLock().unlock();
+        }
+    }
+
+    private static void ensureStatsLoaded() throws SQLException {
+        if (statsLoaded) return;
+        statsLock.writeLock().lock();
+        try {
+            if (statsLoaded) return;
+            String sql = "SELECT menu_item_id, rating, COUNT(*) as count FROM reviews GROUP BY menu_item_id, rating";
+            ratingStats.clear();
+            // {menu_item_id, rating, count}
+            for (long[] row : Dao.query(sql, Dao.NO_PARAMS, rs -> r -> new long[]{r.getInt(1), r.getInt(2), r.getLong(3)})) {
+                int rating = (int) row[1];
+                if (rating < 1 || rating > 5) continue;
+                statsFor((int) row[0]).add(rating, row[2]);
+            }
+            statsLoaded = true;
+        } finally {
+            statsLock.writeLock().unlock();
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,198 @@
+// OrderEvents.java
+import com.google.gson.Gson;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// In-process bus for order and payment state changes, feeding the kitchen/pickup SSE
+// feed. Each subscriber has its own bounded buffer; one that falls a full buffer behind
+// is dropped rather than slowing publishers or other subscribers. The most recent
+// events are kept in a ring so reconnecting clients can resume from Last-Event-ID.
+public class OrderEvents {
+
+    public static final String ORDER_PLACED = "order-placed";
+    public static final String ORDER_CANCELLED = "order-cancelled";
+    public static final String ORDER_STATUS = "order-status";
+    public static final String PAYMENT_COMPLETED = "payment-completed";
+
+    private static final Gson gson = new Gson();
+    private static final OrderEvents shared = new OrderEvents(
+            Config.getInt("ORDER_EVENTS_REPLAY", 1024),
+            Config.getInt("ORDER_EVENTS_BUFFER", 256),
+            Config.getInt("ORDER_EVENTS_MAX_SUBSCRIBERS", 500));
+
+    private final Event[] ring;
+    private final int bufferSize, maxSubscribers;
+    private final Set<Subscription> subscribers = ConcurrentHashMap.newKeySet();
+    private final long startId;
+    private long lastId; // guarded by this
+    private long dropped;
+
+    public static class Event {
+        public final long id;
+        public final String type;
+        public final int orderId;
+        public final String status, timeSlot;
+        public final double totalAmount;
+        public final List<Order.OrderLine> lines; // ORDER_PLACED only
+        public final long at;
+        transient String json;
+
+        Event(long id, String type, int orderId, String status, String timeSlot, double totalAmount, List<Order.OrderLine> lines) {
+            this.id = id;
+            this.type = type;
+            this.orderId = orderId;
+            this.status = status;
+            this.timeSlot = timeSlot;
+            this.totalAmount = totalAmount;
+            this.lines = lines;
+            this.at = System.currentTimeMillis();
+        }
+
+        // Serialized once, shared by every subscriber
+        public String json() {
+            return json;
+        }
+    }
+
+    public static class Subscription implements AutoCloseable {
+        private final OrderEvents bus;
+        private final BlockingQueue<Event> buffer;
+        private final List<Event> replay;
+        private final boolean gap; // requested position is older than the ring: client should reload
+        private volatile boolean dropped, closed;
+
+        Subscription(OrderEvents bus, int bufferSize, List<Event> replay, boolean gap) {
+            this.bus = bus;
+            this.buffer = new ArrayBlockingQueue<>(bufferSize);
+            this.replay = replay;
+            this.gap = gap;
+        }
+
+        // Events missed since the requested Last-Event-ID, oldest first
+        public List<Event> replay() {
+            return replay;
+        }
+
+        public boolean hasGap() {
+            return gap;
+        }
+
+        // Next live event, or null on timeout / once dropped or closed
+        public Event poll(long timeout, TimeUnit unit) throws InterruptedException {
+            if (dropped || closed) return null;
+            return buffer.poll(timeout, unit);
+        }
+
+        public boolean isDropped() {
+            return dropped;
+        }
+
+        public boolean isOpen() {
+            return !dropped && !closed;
+        }
+
+        boolean offer(Event e) {
+            if (buffer.offer(e)) return true;
+            dropped = true;
+            buffer.clear();
+            return false;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            bus.subscribers.remove(this);
+        }
+    }
+
+    public OrderEvents(int replaySize, int bufferSize, int maxSubscribers) {
+        this.ring = new Event[replaySize];
+        this.bufferSize = bufferSize;
+        this.maxSubscribers = maxSubscribers;
+        // Start from the clock so ids from before a restart are always older than new ones
+        this.startId = System.currentTimeMillis() * 1000;
+        this.lastId = startId;
+    }
+
+    public static OrderEvents shared() {
+        return shared;
+    }
+
+    // ---------------- Publishing ----------------
+    // Call after the change has committed
+
+    public void orderPlaced(Order.PlacedOrder order) {
+        publish(ORDER_PLACED, order.orderId, order.status, order.timeSlot, order.totalAmount, order.lines);
+    }
+
+    public void orderCancelled(int orderId, String timeSlot, double totalAmount) {
+        publish(ORDER_CANCELLED, orderId, "CANCELLED", timeSlot, totalAmount, null);
+    }
+
+    public void orderStatusChanged(int orderId, String status) {
+        publish(ORDER_STATUS, orderId, status, null, 0, null);
+    }
+
+    public void paymentCompleted(int orderId, double amount) {
+        publish(PAYMENT_COMPLETED, orderId, "PAID", null, amount, null);
+    }
+
+    private void publish(String type, int orderId, String status, String timeSlot, double totalAmount, List<Order.OrderLine> lines) {
+        int slow = 0;
+        synchronized (this) {
+            Event e = new Event(++lastId, type, orderId, status, timeSlot, totalAmount, lines);
+            e.json = gson.toJson(e);
+            ring[(int) (e.id % ring.length)] = e;
+            // Fan out under the lock so every subscriber sees ids in order and a new
+            // subscriber's replay never overlaps its live events
+            for (Subscription s : subscribers) {
+                if (!s.offer(e)) {
+                    subscribers.remove(s);
+                    slow++;
+                }
+            }
+            dropped += slow;
+        }
+        if (slow > 0) System.err.println("Order feed: dropped " + slow + " slow subscriber(s)");
+    }
+
+    // ---------------- Subscribing ----------------
+
+    // Subscribe to events after lastEventId (null = live events only).
+    // Throws IllegalStateException when the subscriber limit is reached.
+    public Subscription subscribe(Long lastEventId) {
+        synchronized (this) {
+            if (subscribers.size() >= maxSubscribers) {
+                throw new IllegalStateException("Too many order feed subscribers");
+            }
+            List<Event> replay = Collections.emptyList();
+            boolean gap = false;
+            if (lastEventId != null && lastEventId < lastId) {
+                long oldest = Math.max(lastId - ring.length + 1, startId + 1);
+                gap = lastEventId + 1 < oldest;
+                replay = new ArrayList<>();
+                for (long id = Math.max(lastEventId + 1, oldest); id <= lastId; id++) {
+                    replay.add(ring[(int) (id % ring.length)]);
+                }
+            }
+            Subscription s = new Subscription(this, bufferSize, replay, gap);
+            subscribers.add(s);
+            return s;
+        }
+    }
+
+    public int subscriberCount() {
+        return subscribers.size();
+    }
+
+    public synchronized long droppedSubscribers() {
+        return dropped;
+    }
+}
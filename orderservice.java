@@ -0,0 +1,242 @@
+// Order.java
+import java.sql.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+
+public class Order {
+
+    private static final int MAX_LINES = 50;
+    private static final int MAX_QUANTITY = 20;
+
+    public static class CartLine {
+        public int menuItemId, quantity;
+
+        public CartLine(int menuItemId, int quantity) {
+            this.menuItemId = menuItemId;
+            this.quantity = quantity;
+        }
+    }
+
+    public static class OrderLine {
+        public int id, menuItemId, quantity;
+        public String name;
+        public double price;
+
+        public OrderLine(int menuItemId, String name, int quantity, double price) {
+            this.menuItemId = menuItemId;
+            this.name = name;
+            this.quantity = quantity;
+            this.price = price;
+        }
+    }
+
+    public static class PlacedOrder {
+        public int orderId, userId;
+        public String timeSlot, status;
+        public double totalAmount;
+        public List<OrderLine> lines;
+
+        public PlacedOrder(int orderId, int userId, String timeSlot, String status, double totalAmount, List<OrderLine> lines) {
+            this.orderId = orderId;
+            this.userId = userId;
+            this.timeSlot = timeSlot;
+            this.status = status;
+            this.totalAmount = totalAmount;
+            this.lines = lines;
+        }
+    }
+
+    // Place an order: validate the cart against the menu, then write the order row and
+    // all of its order_items in one transaction (two statements regardless of cart size)
+    public PlacedOrder placeOrder(int userId, String timeSlot, List<CartLine> cart) throws SQLException {
+        if (timeSlot == null || timeSlot.isBlank()) {
+            throw new IllegalArgumentException("Time slot is required");
+        }
+        String slot = timeSlot.trim();
+        SlotScheduler scheduler = SlotScheduler.shared();
+        if (!scheduler.isKnownSlot(slot)) {
+            throw new IllegalArgumentException("Unknown time slot " + slot);
+        }
+        List<OrderLine> lines = validateCart(cart);
+        double total = 0;
+        for (OrderLine line : lines) total += line.price * line.quantity;
+        total = Math.round(total * 100) / 100.0;
+
+        // Hold kitchen capacity before touching the database; give it back if the insert fails
+        if (!scheduler.tryReserve(slot)) {
+            throw new IllegalStateException("Time slot " + slot + " is full");
+        }
+        boolean placed = false;
+        try {
+            PlacedOrder order;
+            PopularityTracker tracker = PopularityTracker.shared();
+            Lock recording = tracker.commitLock();
+            recording.lock();
+            try {
+                order = insertOrder(userId, slot, total, lines);
+                placed = true;
+                tracker.record(order.orderId, lines);
+            } finally {
+                recording.unlock();
+            }
+            OrderEvents.shared().orderPlaced(order);
+            return order;
+        } finally {
+            if (!placed) scheduler.release(slot, LocalDate.now());
+        }
+    }
+
+    // Cancel an order that hasn't been paid yet and free its pickup slot
+    public boolean cancelOrder(int orderId) throws SQLException {
+        return cancel(orderId, null);
+    }
+
+    // Same, but only if the order belongs to the given user
+    public boolean cancelOrder(int orderId, int userId) throws SQLException {
+        return cancel(orderId, userId);
+    }
+
+    private boolean cancel(int orderId, Integer userId) throws SQLException {
+        String cancel = "UPDATE orders SET status='CANCELLED' WHERE id = ? AND status = 'PLACED'" +
+                (userId == null ? "" : " AND user_id = ?");
+        String lookup = "SELECT time_slot, total_amount, created_at FROM orders WHERE id = ?";
+        Cancelled cancelled;
+        try (Connection c = Dao.connection()) {
+            c.setAutoCommit(false);
+            try {
+                int updated = Dao.update(c, cancel, ps -> {
+                    ps.setInt(1, orderId);
+                    if (userId != null) ps.setInt(2, userId);
+                });
+                if (updated == 0) {
+                    c.rollback();
+                    return false; // not found, or already paid/cancelled
+                }
+                cancelled = Dao.queryOne(c, lookup, ps -> ps.setInt(1, orderId), Cancelled.MAPPER);
+                RevenueRollup.recordCancelled(c, cancelled.day(), cancelled.total());
+                c.commit();
+            } catch (SQLException | RuntimeException e) {
+                c.rollback();
+                throw e;
+            }
+        }
+        SlotScheduler.shared().release(cancelled.slot(), cancelled.day());
+        OrderEvents.shared().orderCancelled(orderId, cancelled.slot(), cancelled.total());
+        return true;
+    }
+
+    // What cancel() needs to undo: (time_slot, total_amount, created_at)
+    private record Cancelled(String slot, double total, LocalDate day) {
+        static final Dao.RowMapper<Cancelled> MAPPER = rs -> r ->
+                new Cancelled(r.getString(1), r.getDouble(2), r.getTimestamp(3).toLocalDateTime().toLocalDate());
+    }
+
+    // Kitchen workflow after payment: PAID -> PREPARING -> COMPLETED, one step at a time.
+    // Returns false if the order is not in the expected previous status.
+    public boolean advanceStatus(int orderId, String status) throws SQLException {
+        String from;
+        if ("PREPARING".equals(status)) from = "PAID";
+        else if ("COMPLETED".equals(status)) from = "PREPARING";
+        else throw new IllegalArgumentException("Status must be PREPARING or COMPLETED");
+
+        String sql = "UPDATE orders SET status = ? WHERE id = ? AND status = ?";
+        int updated = Dao.update(sql, ps -> {
+            ps.setString(1, status);
+            ps.setInt(2, orderId);
+            ps.setString(3, from);
+        });
+        if (updated == 0) return false;
+        OrderEvents.shared().orderStatusChanged(orderId, status);
+        return true;
+    }
+
+    private PlacedOrder insertOrder(int userId, String timeSlot, double total, List<OrderLine> lines) throws SQLException {
+        // created_at is set here rather than defaulted so the rollup day matches the row exactly
+        String insertOrder = "INSERT INTO orders (user_id, time_slot, total_amount, created_at) VALUES (?, ?, ?, ?)";
+        LocalDateTime now = LocalDateTime.now();
+        try (Connection c = Dao.connection()) {
+            c.setAutoCommit(false);
+            try {
+                int orderId;
+                try (PreparedStatement ps = c.prepareStatement(insertOrder, Statement.RETURN_GENERATED_KEYS)) {
+                    ps.setInt(1, userId);
+                    ps.setString(2, timeSlot);
+                    ps.setDouble(3, total);
+                    ps.setTimestamp(4, Timestamp.valueOf(now));
+                    ps.executeUpdate();
+                    try (ResultSet g = ps.getGeneratedKeys()) {
+                        if (!g.next()) throw new SQLException("No id generated for order");
+                        orderId = g.getInt(1);
+                    }
+                }
+                insertLines(c, orderId, lines);
+                RevenueRollup.recordPlaced(c, now.toLocalDate(), total);
+                c.commit();
+                return new PlacedOrder(orderId, userId, timeSlot, "PLACED", total, lines);
+            } catch (SQLException | RuntimeException e) {
+                c.rollback();
+                throw e;
+            }
+        }
+    }
+
+    // Single multi-row INSERT for every line; generated ids come back in row order
+    private void insertLines(Connection c, int orderId, List<OrderLine> lines) throws SQLException {
+        StringBuilder sql = new StringBuilder("INSERT INTO order_items (order_id, menu_item_id, quantity, price) VALUES ");
+        for (int i = 0; i < lines.size(); i++) {
+            sql.append(i == 0 ? "(?, ?, ?, ?)" : ", (?, ?, ?, ?)");
+        }
+        try (PreparedStatement ps = c.prepareStatement(sql.toString(), Statement.RETURN_GENERATED_KEYS)) {
+            int p = 1;
+            for (OrderLine line : lines) {
+                ps.setInt(p++, orderId);
+                ps.setInt(p++, line.menuItemId);
+                ps.setInt(p++, line.quantity);
+                ps.setDouble(p++, line.price);
+            }
+            ps.executeUpdate();
+            try (ResultSet g = ps.getGeneratedKeys()) {
+                for (OrderLine line : lines) {
+                    if (!g.next()) break;
+                    line.id = g.getInt(1);
+                }
+            }
+        }
+    }
+
+    // Merge duplicate items and price every line from the menu catalog (never trust client prices)
+    private List<OrderLine> validateCart(List<CartLine> cart) throws SQLException {
+        if (cart == null || cart.isEmpty()) {
+            throw new IllegalArgumentException("Cart is empty");
+        }
+        Map<Integer, Integer> quantities = new LinkedHashMap<>();
+        for (CartLine line : cart) {
+            if (line == null || line.quantity < 1) {
+                throw new IllegalArgumentException("Quantity must be at least 1");
+            }
+            quantities.merge(line.menuItemId, line.quantity, Integer::sum);
+        }
+        if (quantities.size() > MAX_LINES) {
+            throw new IllegalArgumentException("Too many items in cart (max " + MAX_LINES + ")");
+        }
+
+        Menu menu = new Menu();
+        List<OrderLine> lines = new ArrayList<>(quantities.size());
+        for (Map.Entry<Integer, Integer> e : quantities.entrySet()) {
+            if (e.getValue() > MAX_QUANTITY) {
+                throw new IllegalArgumentException("Quantity must be at most " + MAX_QUANTITY);
+            }
+            Menu.MenuItem item = menu.getMenuItemById(e.getKey());
+            if (item == null || !item.available) {
+                throw new IllegalArgumentException("Menu item " + e.getKey() + " is not available");
+            }
+            lines.add(new OrderLine(item.id, item.name, e.getValue(), item.price));
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,128 @@
+// PasswordHasher.java
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+// One password-hashing scheme. Each scheme recognises its own stored format, so
+// several can coexist in users.password while old hashes are upgraded on login.
+public interface PasswordHasher {
+
+    // True if the stored value was produced by this scheme
+    boolean supports(String stored);
+
+    String hash(String password);
+
+    boolean matches(String password, String stored);
+
+    // True if the stored value should be replaced with a fresh hash (weaker parameters)
+    default boolean needsRehash(String stored) {
+        return false;
+    }
+
+    // ---------------- PBKDF2 ----------------
+    // Salted PBKDF2-HMAC-SHA256, stored as "pbkdf2_sha256$<iterations>$<salt>$<hash>"
+    // (salt and hash base64). Raising the iteration count upgrades users as they log in.
+    class Pbkdf2 implements PasswordHasher {
+        static final String PREFIX = "pbkdf2_sha256$";
+        private static final int SALT_BYTES = 16;
+        private static final int KEY_BITS = 256;
+
+        private final int iterations;
+        private final SecureRandom random = new SecureRandom();
+
+        public Pbkdf2(int iterations) {
+            if (iterations < 1) throw new IllegalArgumentException("iterations must be positive");
+            this.iterations = iterations;
+        }
+
+        @Override
+        public boolean supports(String stored) {
+            return stored != null && stored.startsWith(PREFIX);
+        }
+
+        @Override
+        public String hash(String password) {
+            byte[] salt = new byte[SALT_BYTES];
+            random.nextBytes(salt);
+            Base64.Encoder b64 = Base64.getEncoder().withoutPadding();
+            return PREFIX + iterations + "$" + b64.encodeToString(salt) + "$"
+                    + b64.encodeToString(derive(password, salt, iterations, KEY_BITS));
+        }
+
+        @Override
+        public boolean matches(String password, String stored) {
+            String[] parts = stored.split("\\$");
+            if (parts.length != 4) return false;
+            try {
+                int rounds = Integer.parseInt(parts[1]);
+                byte[] salt = Base64.getDecoder().decode(parts[2]);
+                byte[] expected = Base64.getDecoder().decode(parts[3]);
+                return MessageDigest.isEqual(expected, derive(password, salt, rounds, expected.length * 8));
+            } catch (IllegalArgumentException e) {
+                return false; // corrupt entry
+            }
+        }
+
+        @Override
+        public boolean needsRehash(String stored) {
+            String[] parts = stored.split("\\$");
+            try {
+                return parts.length != 4 || Integer.parseInt(parts[1]) < iterations;
+            } catch (NumberFormatException e) {
+                return true;
+            }
+        }
+
+        private static byte[] derive(String password, byte[] salt, int rounds, int bits) {
+            PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, rounds, bits);
+            try {
+                return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("PBKDF2WithHmacSHA256 unavailable", e);
+            } finally {
+                spec.clearPassword();
+            }
+        }
+    }
+
+    // ---------------- Legacy SHA-256 ----------------
+    // Unsalted hashes written before PBKDF2: the login/register handlers hex-encoded
+    // SHA-256(password) and User hashed that string again, so the stored value is
+    // hex(SHA-256(hex(SHA-256(password)))). Verify-only; always due for a rehash.
+    class LegacySha256 implements PasswordHasher {
+
+        @Override
+        public boolean supports(String stored) {
+            return stored != null && stored.length() == 64 && Hex.isHex(stored);
+        }
+
+        @Override
+        public String hash(String password) {
+            return Hex.encode(sha256(Hex.encode(sha256(password))));
+        }
+
+        @Override
+        public boolean matches(String password, String stored) {
+            return MessageDigest.isEqual(
+                    hash(password).getBytes(StandardCharsets.US_ASCII),
+                    stored.toLowerCase().getBytes(StandardCharsets.US_ASCII));
+        }
+
+        @Override
+        public boolean needsRehash(String stored) {
+            return true;
+        }
+
+        private static byte[] sha256(String input) {
+            try {
+                return MessageDigest.getInstance("SHA-256").digest(input.getBytes(StandardCharsets.UTF_8));
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
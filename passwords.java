@@ -0,0 +1,106 @@
+// Passwords.java
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+// Hashes and verifies passwords on a small dedicated pool. Key stretching is
+// deliberately slow, so a burst of logins queues here (and is refused once the queue
+// is full) instead of occupying every request thread and starving the rest of the API.
+public class Passwords {
+
+    private static final Passwords shared = new Passwords(
+            new PasswordHasher.Pbkdf2(Config.getInt("PASSWORD_PBKDF2_ITERATIONS", 210_000)),
+            List.of(new PasswordHasher.LegacySha256()),
+            Config.getInt("PASSWORD_HASH_THREADS", Math.max(1, Runtime.getRuntime().availableProcessors() / 2)),
+            Config.getInt("PASSWORD_HASH_QUEUE", 200));
+
+    private final PasswordHasher current;
+    private final List<PasswordHasher> legacy;
+    private final ThreadPoolExecutor pool;
+    private volatile String decoy; // hash of a random password, checked for unknown users
+
+    public Passwords(PasswordHasher current, List<PasswordHasher> legacy, int threads, int queueCapacity) {
+        this.current = current;
+        this.legacy = legacy;
+        AtomicInteger seq = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread t = new Thread(r, "password-hasher-" + seq.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public static Passwords shared() {
+        return shared;
+    }
+
+    // Hash with the current scheme. Throws IllegalStateException if the pool is saturated.
+    public String hash(String password) {
+        return await(hashAsync(password));
+    }
+
+    public CompletableFuture<String> hashAsync(String password) {
+        return submit(() -> current.hash(password));
+    }
+
+    // Checks a password against whatever scheme produced the stored value
+    public boolean matches(String password, String stored) {
+        PasswordHasher hasher = hasherFor(stored);
+        if (hasher == null) return false;
+        return await(submit(() -> hasher.matches(password, stored)));
+    }
+
+    // Check the password against a decoy hash. Used when there is no such user, so a
+    // failed login takes as long whether or not the email is registered.
+    public void checkDecoy(String password) {
+        String stored = decoy;
+        if (stored == null) decoy = stored = hash(UUID.randomUUID().toString());
+        matches(password, stored);
+    }
+
+    public boolean needsRehash(String stored) {
+        PasswordHasher hasher = hasherFor(stored);
+        return hasher != current || current.needsRehash(stored);
+    }
+
+    public int queued() {
+        return pool.getQueue().size();
+    }
+
+    private PasswordHasher hasherFor(String stored) {
+        if (current.supports(stored)) return current;
+        for (PasswordHasher h : legacy) {
+            if (h.supports(stored)) return h;
+        }
+        return null;
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, pool);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Too many logins in progress, try again"));
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing password", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+}
@@ -1,57 +1,189 @@
 // Payment.java
 import java.sql.*;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class Payment {
 
-    public boolean processPayment(int orderId, double amount, String method) throws SQLException {
-        String checkOrder = "SELECT total_amount, status FROM orders WHERE id = ?";
-        String insertPayment = "INSERT INTO payments (order_id, amount, method, status, transaction_id) VALUES (?, ?, ?, ?, ?)";
-        String updateOrder = "UPDATE orders SET status='PAID' WHERE id = ?";
+    public enum Outcome { SUCCESS, ORDER_NOT_FOUND, NOT_PAYABLE, AMOUNT_MISMATCH, BUSY }
 
-        try (Connection c = DBConnection.getConnection()) {
+    private static final long DEDUPE_TTL_MS = Config.getLong("PAYMENT_DEDUPE_TTL_MS", 10 * 60_000);
+
+    // Bounded worker pool: a burst of payments queues here instead of pinning request threads,
+    // and is rejected (BUSY) once the queue is full
+    private static final ThreadPoolExecutor workers;
+
+    // Requests by idempotency key, kept for DEDUPE_TTL_MS after they complete so retries
+    // and double-clicks get the original result without touching the database
+    private static final Map<String, Pending> pending = new ConcurrentHashMap<>();
+
+    static {
+        int threads = Config.getInt("PAYMENT_WORKERS", 8);
+        AtomicInteger n = new AtomicInteger();
+        workers = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Config.getInt("PAYMENT_QUEUE", 500)), r -> {
+                    Thread t = new Thread(r, "payment-worker-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        workers.allowCoreThreadTimeOut(true);
+    }
+
+    public static class PaymentResult {
+        public Outcome outcome;
+        public int orderId;
+        public String transactionId, idempotencyKey;
+
+        public PaymentResult(Outcome outcome, int orderId, String transactionId, String idempotencyKey) {
+            this.outcome = outcome;
+            this.orderId = orderId;
+            this.transactionId = transactionId;
+            this.idempotencyKey = idempotencyKey;
+        }
+    }
+
+    private static final class Pending {
+        final int userId, orderId;
+        final double amount;
+        final CompletableFuture<PaymentResult> result = new CompletableFuture<>();
+
+        Pending(int userId, int orderId, double amount) {
+            this.userId = userId;
+            this.orderId = orderId;
+            this.amount = amount;
+        }
+    }
+
+    // Synchronous API kept for existing callers; every call gets a fresh idempotency key
+    public boolean processPayment(int userId, int orderId, double amount, String method) throws SQLException {
+        try {
+            validateMethod(method);
+            return execute(userId, orderId, amount, method, UUID.randomUUID().toString()).outcome == Outcome.SUCCESS;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    // Queue a payment by userId for one of their own orders. Submitting the same idempotency
+    // key again returns the same future (or, after a restart, the stored payment); reusing a
+    // key for a different order or amount, or a missing method, is rejected with IllegalArgumentException.
+    public CompletableFuture<PaymentResult> submitPayment(int userId, int orderId, double amount, String method, String idempotencyKey) {
+        if (idempotencyKey == null || idempotencyKey.isBlank() || idempotencyKey.length() > 100) {
+            throw new IllegalArgumentException("Idempotency key must be 1-100 characters");
+        }
+        validateMethod(method);
+        Pending mine = new Pending(userId, orderId, amount);
+        Pending existing = pending.putIfAbsent(idempotencyKey, mine);
+        if (existing != null) {
+            if (existing.userId != userId || existing.orderId != orderId || Math.abs(existing.amount - amount) > 0.01) {
+                throw new IllegalArgumentException("Idempotency key was already used for a different payment");
+            }
+            return existing.result;
+        }
+
+        try {
+            workers.execute(() -> {
+                try {
+                    mine.result.complete(execute(userId, orderId, amount, method, idempotencyKey));
+                } catch (Throwable t) {
+                    mine.result.completeExceptionally(t);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(idempotencyKey, mine);
+            mine.result.complete(new PaymentResult(Outcome.BUSY, orderId, null, idempotencyKey));
+            return mine.result;
+        }
+
+        mine.result.whenComplete((r, t) -> {
+            if (t != null || r.outcome == Outcome.BUSY) {
+                pending.remove(idempotencyKey, mine); // let the client retry with the same key
+            } else {
+                CompletableFuture.delayedExecutor(DEDUPE_TTL_MS, TimeUnit.MILLISECONDS)
+                        .execute(() -> pending.remove(idempotencyKey, mine));
+            }
+        });
+        return mine.result;
+    }
+
+    private static void validateMethod(String method) {
+        if (method == null || method.isBlank() || method.length() > 50) {
+            throw new IllegalArgumentException("Payment method must be 1-50 characters");
+        }
+    }
+
+    public static int queuedPayments() {
+        return workers.getQueue().size();
+    }
+
+    // Move the order PLACED -> PAID with one conditional UPDATE (no read-then-write race),
+    // record the payment in the same transaction, and only look things up when it fails
+    private PaymentResult execute(int userId, int orderId, double amount, String method, String idempotencyKey) throws SQLException {
+        String markPaid = "UPDATE orders SET status='PAID' WHERE id = ? AND user_id = ? AND status = 'PLACED' AND ABS(total_amount - ?) <= 0.01";
+        String insertPayment = "INSERT INTO payments (order_id, amount, method, status, transaction_id, idempotency_key) VALUES (?, ?, ?, ?, ?, ?)";
+
+        try (Connection c = Dao.connection()) {
             c.setAutoCommit(false);
-            
-            // Check order exists and not already paid
-            try (PreparedStatement ps = c.prepareStatement(checkOrder)) {
+            int updated;
+            try (PreparedStatement ps = c.prepareStatement(markPaid)) {
                 ps.setInt(1, orderId);
-                ResultSet rs = ps.executeQuery();
-                if (!rs.next()) {
-                    c.rollback();
-                    return false; // order not found
-                }
-                if ("PAID".equalsIgnoreCase(rs.getString("status"))) {
-                    c.rollback();
-                    return false; // already paid
-                }
-                if (Math.abs(rs.getDouble("total_amount") - amount) > 0.01) {
-                    c.rollback();
-                    return false; // amount mismatch
-                }
+                ps.setInt(2, userId);
+                ps.setDouble(3, amount);
+                updated = Dao.timed(markPaid, ps::executeUpdate);
+            }
+            if (updated == 0) {
+                c.rollback();
+                c.setAutoCommit(true);
+                return explainFailure(c, userId, orderId, idempotencyKey);
             }
 
-            // Insert payment
+            String transactionId = UUID.randomUUID().toString();
             try (PreparedStatement ps = c.prepareStatement(insertPayment)) {
                 ps.setInt(1, orderId);
                 ps.setDouble(2, amount);
                 ps.setString(3, method);
                 ps.setString(4, "SUCCESS");
-                ps.setString(5, UUID.randomUUID().toString());
-                ps.executeUpdate();
-            }
-
-            // Update order status
-            try (PreparedStatement ps = c.prepareStatement(updateOrder)) {
-                ps.setInt(1, orderId);
-                ps.executeUpdate();
+                ps.setString(5, transactionId);
+                ps.setString(6, idempotencyKey);
+                Dao.timed(insertPayment, ps::executeUpdate);
+            } catch (SQLException e) {
+                c.rollback();
+                throw e;
             }
-
             c.commit();
-            return true;
+            OrderEvents.shared().paymentCompleted(orderId, amount);
+            return new PaymentResult(Outcome.SUCCESS, orderId, transactionId, idempotencyKey);
+        }
+    }
 
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return false;
+    // The conditional UPDATE matched nothing: a replay of a stored payment, or a real rejection.
+    // Someone else's order is reported as not found.
+    private PaymentResult explainFailure(Connection c, int userId, int orderId, String idempotencyKey) throws SQLException {
+        PaymentResult replay = Dao.queryOne(c,
+                "SELECT p.order_id, p.transaction_id, o.user_id FROM payments p JOIN orders o ON p.order_id = o.id WHERE p.idempotency_key = ?",
+                ps -> ps.setString(1, idempotencyKey),
+                rs -> r -> r.getInt(1) == orderId && r.getInt(3) == userId
+                        ? new PaymentResult(Outcome.SUCCESS, orderId, r.getString(2), idempotencyKey) : null);
+        if (replay != null) return replay;
+
+        String status = Dao.queryOne(c, "SELECT status FROM orders WHERE id = ? AND user_id = ?", ps -> {
+            ps.setInt(1, orderId);
+            ps.setInt(2, userId);
+        }, rs -> r -> r.getString(1));
+        if (status == null) {
+            return new PaymentResult(Outcome.ORDER_NOT_FOUND, orderId, null, idempotencyKey);
+        }
+        if (!"PLACED".equalsIgnoreCase(status)) {
+            return new PaymentResult(Outcome.NOT_PAYABLE, orderId, null, idempotencyKey); // already paid or cancelled
         }
+        return new PaymentResult(Outcome.AMOUNT_MISMATCH, orderId, null, idempotencyKey);
     }
 }
\ No newline at end of file
@@ -0,0 +1,339 @@
+// PopularityTracker.java
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Live per-item order counters fed by Order.placeOrder, so "most popular" and
+// "trending now" are answered from memory. All-time and today's counters are seeded
+// from the database on first use; all-time counters are reconciled with the database
+// periodically to correct any drift. The last-hour window starts empty after a restart.
+//
+// While a seed or reconcile query runs, record() also notes each order id. Afterwards
+// the ids the query's snapshot already contained are looked up in the same transaction,
+// so every order is counted once: from the snapshot or from memory, never both or neither.
+// For that, callers hold commitLock() from before their commit until record() returns:
+// an order the snapshot saw must not be recorded after the snapshot stops noting ids.
+public class PopularityTracker {
+
+    public enum Window { ALL_TIME, TODAY, LAST_HOUR }
+
+    private static final long RECONCILE_MS = Config.getLong("POPULARITY_RECONCILE_MS", 15 * 60_000);
+    private static final PopularityTracker shared = new PopularityTracker();
+
+    private final Map<Integer, ItemCounter> counters = new ConcurrentHashMap<>();
+    // record() and commitLock() hold the read lock; starting and ending a snapshot takes the write lock
+    private final ReentrantReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+    private Map<Integer, List<Order.OrderLine>> pending; // orders recorded during a snapshot, guarded by snapshotLock
+    private boolean live;                                // counters take updates, guarded by snapshotLock
+    private volatile boolean loaded;                     // counters are seeded and can be read
+    private ScheduledExecutorService reconciler;
+
+    public static PopularityTracker shared() {
+        return shared;
+    }
+
+    // Counters for one menu item. Window buckets are reset lazily by whoever first writes
+    // to them in a new minute/day; a concurrent write at the boundary may be dropped.
+    static final class ItemCounter {
+        volatile String name;
+        final LongAdder orders = new LongAdder();
+        final LongAdder quantity = new LongAdder();
+
+        final AtomicLong todayEpochDay = new AtomicLong();
+        final AtomicLong todayOrders = new AtomicLong();
+        final AtomicLong todayQuantity = new AtomicLong();
+
+        final AtomicLongArray minuteStamp = new AtomicLongArray(60);
+        final AtomicLongArray minuteOrders = new AtomicLongArray(60);
+        final AtomicLongArray minuteQuantity = new AtomicLongArray(60);
+
+        ItemCounter(String name) {
+            this.name = name;
+        }
+
+        void record(int qty, long epochDay, long epochMinute) {
+            orders.increment();
+            quantity.add(qty);
+
+            long day = todayEpochDay.get();
+            if (day != epochDay && todayEpochDay.compareAndSet(day, epochDay)) {
+                todayOrders.set(0);
+                todayQuantity.set(0);
+            }
+            todayOrders.incrementAndGet();
+            todayQuantity.addAndGet(qty);
+
+            int idx = (int) (epochMinute % 60);
+            long stamp = minuteStamp.get(idx);
+            if (stamp != epochMinute && minuteStamp.compareAndSet(idx, stamp, epochMinute)) {
+                minuteOrders.set(idx, 0);
+                minuteQuantity.set(idx, 0);
+            }
+            minuteOrders.incrementAndGet(idx);
+            minuteQuantity.addAndGet(idx, qty);
+        }
+
+        // {orders, quantity} for the window
+        long[] totals(Window window, long epochDay, long epochMinute) {
+            switch (window) {
+                case TODAY:
+                    if (todayEpochDay.get() != epochDay) return new long[2];
+                    return new long[]{todayOrders.get(), todayQuantity.get()};
+                case LAST_HOUR:
+                    long o = 0, q = 0;
+                    for (int i = 0; i < 60; i++) {
+                        if (epochMinute - minuteStamp.get(i) < 60) {
+                            o += minuteOrders.get(i);
+                            q += minuteQuantity.get(i);
+                        }
+                    }
+                    return new long[]{o, q};
+                default:
+                    return new long[]{orders.sum(), quantity.sum()};
+            }
+        }
+    }
+
+    // Held by the caller across an order's commit and its record() call
+    public Lock commitLock() {
+        return snapshotLock.readLock();
+    }
+
+    // Called after an order commits. Before the first read starts seeding there is
+    // nothing to update: the seed query will include this order.
+    public void record(int orderId, List<Order.OrderLine> lines) {
+        snapshotLock.readLock().lock();
+        try {
+            if (pending != null) pending.put(orderId, lines);
+            if (live) apply(lines);
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+    }
+
+    private void apply(List<Order.OrderLine> lines) {
+        long epochMinute = System.currentTimeMillis() / 60_000;
+        long epochDay = LocalDate.now().toEpochDay();
+        for (Order.OrderLine line : lines) {
+            counter(line.menuItemId, line.name).record(line.quantity, epochDay, epochMinute);
+        }
+    }
+
+    // Top k items by quantity for the window, using a size-k min-heap over the counters
+    public List<OrderSummary.PopularItem> top(Window window, int k) throws SQLException {
+        ensureLoaded();
+        if (k <= 0) return Collections.emptyList();
+        long epochMinute = System.currentTimeMillis() / 60_000;
+        long epochDay = LocalDate.now().toEpochDay();
+
+        PriorityQueue<OrderSummary.PopularItem> heap = new PriorityQueue<>(k + 1,
+                (a, b) -> a.totalQuantity != b.totalQuantity
+                        ? Integer.compare(a.totalQuantity, b.totalQuantity)
+                        : Integer.compare(b.id, a.id));
+        for (Map.Entry<Integer, ItemCounter> e : counters.entrySet()) {
+            long[] t = e.getValue().totals(window, epochDay, epochMinute);
+            if (t[1] <= 0) continue;
+            OrderSummary.PopularItem item = new OrderSummary.PopularItem(
+                    e.getKey(), e.getValue().name, (int) t[0], (int) t[1]);
+            if (heap.size() < k) {
+                heap.add(item);
+            } else if (heap.comparator().compare(item, heap.peek()) > 0) {
+                heap.poll();
+                heap.add(item);
+            }
+        }
+        List<OrderSummary.PopularItem> result = new ArrayList<>(heap);
+        result.sort(heap.comparator().reversed());
+        return result;
+    }
+
+    private ItemCounter counter(int menuItemId, String name) {
+        ItemCounter c = counters.get(menuItemId);
+        if (c == null) c = counters.computeIfAbsent(menuItemId, id -> new ItemCounter(name));
+        return c;
+    }
+
+    private void ensureLoaded() throws SQLException {
+        if (loaded) return;
+        synchronized (this) {
+            if (loaded) return;
+            snapshot(true);
+            loaded = true;
+            reconciler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "popularity-reconciler");
+                t.setDaemon(true);
+                return t;
+            });
+            reconciler.scheduleWithFixedDelay(() -> {
+                try {
+                    reconcile();
+                } catch (Exception e) {
+                    System.err.println("Popularity reconciliation failed: " + e.getMessage());
+                }
+            }, RECONCILE_MS, RECONCILE_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Replace all-time counters with the database totals
+    public void reconcile() throws SQLException {
+        synchronized (this) {
+            snapshot(false);
+        }
+    }
+
+    private static final String ALL_TIME_SQL = "SELECT mi.id, mi.name, COUNT(oi.menu_item_id) as order_count, " +
+            "SUM(oi.quantity) as total_quantity " +
+            "FROM order_items oi JOIN menu_items mi ON oi.menu_item_id = mi.id " +
+            "GROUP BY mi.id, mi.name";
+
+    // Per-item totals for orders since the given start of day
+    static final String TODAY_SQL = "SELECT oi.menu_item_id, mi.name, COUNT(*) as order_count, SUM(oi.quantity) as total_quantity " +
+            "FROM order_items oi JOIN orders o ON oi.order_id = o.id " +
+            "JOIN menu_items mi ON oi.menu_item_id = mi.id " +
+            "WHERE o.created_at >= ? GROUP BY oi.menu_item_id, mi.name";
+
+    // Load the totals in one REPEATABLE READ transaction, then settle the orders recorded
+    // meanwhile. Seeding fills today's and all-time counters and makes them live; a
+    // reconcile moves each all-time counter to the snapshot total plus what the snapshot missed.
+    private void snapshot(boolean seed) throws SQLException {
+        Map<Integer, long[]> before = new HashMap<>(); // all-time {orders, quantity} when tracking began
+        snapshotLock.writeLock().lock();
+        try {
+            pending = new ConcurrentHashMap<>();
+            if (!seed) {
+                for (Map.Entry<Integer, ItemCounter> e : counters.entrySet()) {
+                    before.put(e.getKey(), new long[]{e.getValue().orders.sum(), e.getValue().quantity.sum()});
+                }
+            }
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+
+        Map<Integer, List<Order.OrderLine>> recorded = null;
+        LocalDate today = LocalDate.now();
+        try (Connection c = Dao.connection()) {
+            int isolation = c.getTransactionIsolation();
+            try {
+                c.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+                c.setAutoCommit(false);
+                List<ItemTotals> todayRows = seed
+                        ? Dao.query(c, TODAY_SQL, ps -> ps.setTimestamp(1, Timestamp.valueOf(today.atStartOfDay())), ItemTotals.MAPPER)
+                        : List.of();
+                List<ItemTotals> allRows = Dao.query(c, ALL_TIME_SQL, Dao.NO_PARAMS, ItemTotals.MAPPER);
+
+                snapshotLock.writeLock().lock();
+                try {
+                    recorded = pending;
+                    pending = null;
+                    if (seed) live = true; // from here on record() updates the counters directly
+                } finally {
+                    snapshotLock.writeLock().unlock();
+                }
+                Set<Integer> seen = seenBySnapshot(c, recorded.keySet());
+                c.commit();
+
+                long epochDay = today.toEpochDay();
+                for (ItemTotals row : todayRows) {
+                    ItemCounter counter = counter(row.id(), row.name());
+                    counter.todayEpochDay.compareAndSet(0, epochDay);
+                    counter.todayOrders.addAndGet(row.orders());
+                    counter.todayQuantity.addAndGet(row.quantity());
+                }
+                // Adjust by delta rather than overwrite, so updates made since the snapshot stay
+                Map<Integer, long[]> adjust = new HashMap<>();
+                for (ItemTotals row : allRows) {
+                    ItemCounter counter = counter(row.id(), row.name());
+                    counter.name = row.name();
+                    long[] old = before.getOrDefault(row.id(), new long[2]);
+                    adjust.put(row.id(), new long[]{row.orders() - old[0], row.quantity() - old[1]});
+                }
+                for (Map.Entry<Integer, long[]> e : before.entrySet()) {
+                    adjust.putIfAbsent(e.getKey(), new long[]{-e.getValue()[0], -e.getValue()[1]});
+                }
+                for (Map.Entry<Integer, List<Order.OrderLine>> order : recorded.entrySet()) {
+                    boolean inSnapshot = seen.contains(order.getKey());
+                    // Seeding: add what the snapshot missed (it was not applied in memory).
+                    // Reconcile: it was applied in memory already; take it back if the snapshot has it too.
+                    if (seed == inSnapshot) continue;
+                    int sign = seed ? 1 : -1;
+                    for (Order.OrderLine line : order.getValue()) {
+                        long[] a = adjust.computeIfAbsent(line.menuItemId, id -> new long[2]);
+                        a[0] += sign;
+                        a[1] += sign * (long) line.quantity;
+                        if (seed) {
+                            ItemCounter counter = counter(line.menuItemId, line.name);
+                            counter.todayEpochDay.compareAndSet(0, epochDay);
+                            counter.todayOrders.incrementAndGet();
+                            counter.todayQuantity.addAndGet(line.quantity);
+                        }
+                    }
+                }
+                for (Map.Entry<Integer, long[]> e : adjust.entrySet()) {
+                    ItemCounter counter = counters.get(e.getKey());
+                    if (counter == null) continue;
+                    counter.orders.add(e.getValue()[0]);
+                    counter.quantity.add(e.getValue()[1]);
+                }
+            } catch (SQLException | RuntimeException e) {
+                if (!c.getAutoCommit()) c.rollback();
+                throw e;
+            } finally {
+                c.setTransactionIsolation(isolation);
+            }
+        } catch (SQLException | RuntimeException e) {
+            abandon(seed); // also when no connection could be had
+            throw e;
+        }
+    }
+
+    // Ids among orderIds that the current transaction's snapshot contains
+    private static Set<Integer> seenBySnapshot(Connection c, Set<Integer> orderIds) throws SQLException {
+        Set<Integer> seen = new HashSet<>();
+        List<Integer> ids = new ArrayList<>(orderIds);
+        for (int from = 0; from < ids.size(); from += 500) {
+            List<Integer> chunk = ids.subList(from, Math.min(ids.size(), from + 500));
+            String sql = "SELECT DISTINCT order_id FROM order_items WHERE order_id IN ("
+                    + String.join(",", Collections.nCopies(chunk.size(), "?")) + ")";
+            seen.addAll(Dao.query(c, sql, ps -> {
+                for (int i = 0; i < chunk.size(); i++) ps.setInt(i + 1, chunk.get(i));
+            }, rs -> r -> r.getInt(1)));
+        }
+        return seen;
+    }
+
+    // The snapshot failed: stop tracking. A failed seed also starts over from empty
+    // counters, since the next seed counts everything again.
+    private void abandon(boolean seed) {
+        snapshotLock.writeLock().lock();
+        try {
+            pending = null;
+            if (seed) {
+                live = false;
+                counters.clear();
+            }
+        } finally {
+            snapshotLock.writeLock().unlock();
+        }
+    }
+
+    // (menu item id, name, order_count, total_quantity)
+    private record ItemTotals(int id, String name, long orders, long quantity) {
+        static final Dao.RowMapper<ItemTotals> MAPPER = rs -> r -> new ItemTotals(r.getInt(1), r.getString(2), r.getLong(3), r.getLong(4));
+    }
+}
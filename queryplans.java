@@ -0,0 +1,102 @@
+// QueryPlans.java
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+// EXPLAINs the hot queries and reports any that scan a whole table: a MySQL plan row of
+// type ALL, or an H2 plan using tableScan. Run it after migrating, against a database
+// with realistic data - on a near-empty table MySQL may prefer a scan even when the
+// index is there. The server refuses to start on a finding when VERIFY_QUERY_PLANS is on,
+// which is the default for the embedded databases (built from schema.sql and the
+// migrations, so a scan there means an index is missing); DaoBenchmark checks too.
+//
+// The menu catalog (SELECT * FROM menu_items ORDER BY name) reads every row by design
+// and is not checked.
+public class QueryPlans {
+
+    // One hot query with sample parameters
+    record Check(String name, String sql, Dao.Binder binder) {}
+
+    static List<Check> checks() {
+        Timestamp today = Timestamp.valueOf(LocalDate.now().atStartOfDay());
+        Timestamp tomorrow = Timestamp.valueOf(LocalDate.now().plusDays(1).atStartOfDay());
+        List<Check> checks = new ArrayList<>();
+        checks.add(new Check("review page by menu item", Review.pageSql("r.menu_item_id", true), QueryPlans::bindPage));
+        checks.add(new Check("review page by user", Review.pageSql("r.user_id", true), QueryPlans::bindPage));
+        checks.add(new Check("orders per slot", SlotScheduler.COUNT_BY_SLOT_SQL, ps -> {
+            ps.setTimestamp(1, today);
+            ps.setTimestamp(2, tomorrow);
+        }));
+        checks.add(new Check("popularity today", PopularityTracker.TODAY_SQL, ps -> ps.setTimestamp(1, today)));
+        checks.add(new Check("order summaries", String.format(OrderSummaryRenderer.SELECT_SUMMARIES, "?"), ps -> ps.setInt(1, 1)));
+        return checks;
+    }
+
+    private static void bindPage(PreparedStatement ps) throws SQLException {
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        ps.setInt(1, 1);
+        ps.setTimestamp(2, now);
+        ps.setTimestamp(3, now);
+        ps.setInt(4, Integer.MAX_VALUE);
+        ps.setInt(5, Review.DEFAULT_PAGE_SIZE);
+    }
+
+    // Problems found, empty if every hot query uses an index
+    public static List<String> verify() throws SQLException {
+        List<String> problems = new ArrayList<>();
+        try (Connection c = Dao.connection()) {
+            for (Check check : checks()) {
+                for (String scan : fullScans(c, check)) problems.add(check.name() + ": " + scan);
+            }
+        }
+        return problems;
+    }
+
+    private static List<String> fullScans(Connection c, Check check) throws SQLException {
+        List<String> plan = Dao.query(c, "EXPLAIN " + check.sql(), check.binder(), rs -> {
+            ResultSetMetaData md = rs.getMetaData();
+            int type = -1, table = -1;
+            for (int i = 1; i <= md.getColumnCount(); i++) {
+                String label = md.getColumnLabel(i);
+                if (label.equalsIgnoreCase("type")) type = i;
+                else if (label.equalsIgnoreCase("table")) table = i;
+            }
+            if (type < 0) {
+                // H2: one row of plan text
+                return r -> r.getString(1);
+            }
+            int typeCol = type, tableCol = table;
+            return r -> "ALL".equalsIgnoreCase(r.getString(typeCol)) ? "full scan of " + r.getString(tableCol) : null;
+        });
+        List<String> scans = new ArrayList<>();
+        for (String row : plan) {
+            if (row == null) continue;
+            if (row.startsWith("full scan of ")) scans.add(row);
+            else if (row.toLowerCase(Locale.ROOT).contains("tablescan")) scans.add("table scan in plan: " + row.replaceAll("\\s+", " "));
+        }
+        return scans;
+    }
+
+    // Throws IllegalStateException listing the queries that scan a table
+    public static void requireIndexed() throws SQLException {
+        List<String> problems = verify();
+        if (!problems.isEmpty()) throw new IllegalStateException("Hot queries scan whole tables: " + problems);
+    }
+
+    // CI / deploy check: java QueryPlans (exit status 1 if a hot query scans a table)
+    public static void main(String[] args) throws Exception {
+        List<String> problems = verify();
+        if (problems.isEmpty()) {
+            System.out.println("All " + checks().size() + " hot queries use an index");
+            return;
+        }
+        for (String p : problems) System.err.println(p);
+        System.exit(1);
+    }
+}
@@ -0,0 +1,214 @@
+// RequestExecutor.java
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Executor for HttpServer exchanges so blocking JDBC work never runs on the dispatcher thread.
+// Mode "virtual" (default) starts a virtual thread per request; "platform" uses a bounded pool.
+// Either way at most maxInFlight handlers run at once; the rest wait and show up as queued.
+// When the platform queue is full too, the request is answered 503 by OverloadFilter on a
+// small overflow pool, so the dispatcher thread never runs a handler and keeps accepting.
+public class RequestExecutor implements Executor {
+
+    // Set while an overflow thread runs a request that is to be refused
+    private static final ThreadLocal<Boolean> SHEDDING = new ThreadLocal<>();
+
+    private final String mode;
+    private final ExecutorService delegate;
+    private final ExecutorService overflow; // platform mode only
+    private final Semaphore permits;
+    private final int maxInFlight;
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final AtomicLong totalQueueNanos = new AtomicLong();
+
+    public RequestExecutor(String mode, int maxInFlight, int platformThreads, int platformQueueCapacity) {
+        this.maxInFlight = maxInFlight;
+        this.permits = new Semaphore(maxInFlight, true);
+
+        ExecutorService virtual = "platform".equalsIgnoreCase(mode) ? null : newVirtualThreadExecutor();
+        if (virtual != null) {
+            this.mode = "virtual";
+            this.delegate = virtual;
+            this.overflow = null;
+        } else {
+            if (!"platform".equalsIgnoreCase(mode)) {
+                System.err.println("Virtual threads not available on this JVM, using platform thread pool");
+            }
+            this.mode = "platform";
+            AtomicInteger n = new AtomicInteger();
+            ThreadPoolExecutor pool = new ThreadPoolExecutor(platformThreads, platformThreads,
+                    60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(platformQueueCapacity), r -> {
+                        Thread t = new Thread(r, "http-worker-" + n.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    },
+                    // Queue full: execute() hands the request to the overflow pool for a 503
+                    new ThreadPoolExecutor.AbortPolicy());
+            pool.allowCoreThreadTimeOut(true);
+            this.delegate = pool;
+            this.overflow = Executors.newFixedThreadPool(2, r -> {
+                Thread t = new Thread(r, "http-overflow-" + n.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    public static RequestExecutor fromConfig() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        return new RequestExecutor(
+                Config.get("HTTP_EXECUTOR", "virtual"),
+                Config.getInt("HTTP_MAX_IN_FLIGHT", 256),
+                Config.getInt("HTTP_PLATFORM_THREADS", cores * 8),
+                Config.getInt("HTTP_PLATFORM_QUEUE", 1000));
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        long enqueued = System.nanoTime();
+        queued.incrementAndGet();
+        try {
+            submit(task, enqueued);
+        } catch (RejectedExecutionException e) {
+            queued.decrementAndGet();
+            if (overflow == null || overflow.isShutdown()) throw e;
+            rejected.increment();
+            overflow.execute(() -> {
+                SHEDDING.set(Boolean.TRUE);
+                try {
+                    task.run(); // OverloadFilter answers before any handler runs
+                } finally {
+                    SHEDDING.remove();
+                }
+            });
+        }
+    }
+
+    private void submit(Runnable task, long enqueued) {
+        delegate.execute(() -> {
+            boolean acquired = false;
+            try {
+                permits.acquire();
+                acquired = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                queued.decrementAndGet();
+            }
+            if (!acquired) return;
+
+            totalQueueNanos.addAndGet(System.nanoTime() - enqueued);
+            int now = inFlight.incrementAndGet();
+            peakInFlight.accumulateAndGet(now, Math::max);
+            try {
+                task.run();
+                completed.increment();
+            } catch (RuntimeException | Error e) {
+                failed.increment();
+                throw e;
+            } finally {
+                inFlight.decrementAndGet();
+                permits.release();
+            }
+        });
+    }
+
+    public void shutdown(long timeoutMs) {
+        delegate.shutdown();
+        if (overflow != null) overflow.shutdown();
+        try {
+            delegate.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public Stats stats() {
+        long done = completed.sum() + failed.sum();
+        int platformQueue = delegate instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) delegate).getQueue().size() : 0;
+        return new Stats(mode, maxInFlight, inFlight.get(), peakInFlight.get(), queued.get(), platformQueue,
+                completed.sum(), failed.sum(), rejected.sum(), done == 0 ? 0 : totalQueueNanos.get() / done / 1000);
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor() is JDK 21+; look it up so we still run on older JVMs
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method m = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    // Add first on every context: refuses requests the executor had no room for
+    public static class OverloadFilter extends Filter {
+        private static final byte[] BODY = "{\"error\":\"Server busy, try again\"}".getBytes(StandardCharsets.UTF_8);
+
+        @Override
+        public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+            if (SHEDDING.get() == null) {
+                chain.doFilter(exchange);
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            exchange.sendResponseHeaders(503, BODY.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(BODY);
+            }
+        }
+
+        @Override
+        public String description() {
+            return "Answers 503 when the request executor is saturated";
+        }
+    }
+
+    public static class Stats {
+        public String mode;
+        public int maxInFlight, inFlight, peakInFlight, queued, platformQueue;
+        public long completed, failed, rejected, avgQueueMicros;
+
+        public Stats(String mode, int maxInFlight, int inFlight, int peakInFlight, int queued, int platformQueue,
+                     long completed, long failed, long rejected, long avgQueueMicros) {
+            this.mode = mode;
+            this.maxInFlight = maxInFlight;
+            this.inFlight = inFlight;
+            this.peakInFlight = peakInFlight;
+            this.queued = queued;
+            this.platformQueue = platformQueue;
+            this.completed = completed;
+            this.failed = failed;
+            this.rejected = rejected;
+            this.avgQueueMicros = avgQueueMicros;
+        }
+
+        @Override
+        public String toString() {
+            return "mode=" + mode + " inFlight=" + inFlight + "/" + maxInFlight + " peak=" + peakInFlight
+                    + " queued=" + queued + " completed=" + completed + " failed=" + failed + " rejected=" + rejected
+                    + " avgQueueMicros=" + avgQueueMicros;
+        }
+    }
+}
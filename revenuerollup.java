@@ -0,0 +1,117 @@
+// RevenueRollup.java
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Per-day and per-month order counts and revenue (non-cancelled orders), kept in
+// daily_revenue / monthly_revenue. Order writes adjust the rollups in the same
+// transaction, so reports read a handful of rows instead of scanning orders.
+//
+// Each day and month is split over REVENUE_ROLLUP_STRIPES rows (the bucket column) and
+// every order transaction updates one stripe picked at random. Concurrent orders then
+// rarely wait on each other's row locks; readers sum the stripes.
+public class RevenueRollup {
+
+    static final int STRIPES = Math.max(1, Math.min(100, Config.getInt("REVENUE_ROLLUP_STRIPES", 16)));
+
+    private static final String UPSERT_DAY =
+            "INSERT INTO daily_revenue (report_date, bucket, order_count, revenue) VALUES (?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE order_count = order_count + VALUES(order_count), revenue = revenue + VALUES(revenue)";
+    private static final String UPSERT_MONTH =
+            "INSERT INTO monthly_revenue (month_start, bucket, order_count, revenue) VALUES (?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE order_count = order_count + VALUES(order_count), revenue = revenue + VALUES(revenue)";
+
+    // Call inside the transaction that inserts the order
+    public static void recordPlaced(Connection c, LocalDate day, double amount) throws SQLException {
+        apply(c, day, 1, amount);
+    }
+
+    // Call inside the transaction that moves an order to CANCELLED
+    public static void recordCancelled(Connection c, LocalDate day, double amount) throws SQLException {
+        apply(c, day, -1, -amount);
+    }
+
+    // Day row before month row in every transaction, so two orders can't deadlock here
+    private static void apply(Connection c, LocalDate day, int countDelta, double revenueDelta) throws SQLException {
+        int bucket = ThreadLocalRandom.current().nextInt(STRIPES);
+        Dao.update(c, UPSERT_DAY, ps -> {
+            ps.setDate(1, Date.valueOf(day));
+            ps.setInt(2, bucket);
+            ps.setInt(3, countDelta);
+            ps.setDouble(4, revenueDelta);
+        });
+        Dao.update(c, UPSERT_MONTH, ps -> {
+            ps.setDate(1, Date.valueOf(day.withDayOfMonth(1)));
+            ps.setInt(2, bucket);
+            ps.setInt(3, countDelta);
+            ps.setDouble(4, revenueDelta);
+        });
+    }
+
+    // Rebuild both rollup tables from orders in one pass, into stripe 0. Meant for the initial load of
+    // history; orders placed while it runs can be missed, so run it when the canteen is closed.
+    public static int backfill() throws SQLException {
+        String scan = "SELECT CAST(created_at AS DATE) AS report_date, COUNT(*), SUM(total_amount) " +
+                      "FROM orders WHERE status != 'CANCELLED' GROUP BY CAST(created_at AS DATE)";
+        Map<LocalDate, double[]> days = new TreeMap<>();
+        Map<LocalDate, double[]> months = new TreeMap<>();
+
+        try (Connection c = Dao.connection()) {
+            c.setAutoCommit(false);
+            try {
+                try (PreparedStatement ps = c.prepareStatement(scan);
+                     ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        LocalDate day = rs.getDate(1).toLocalDate();
+                        double count = rs.getInt(2), revenue = rs.getDouble(3);
+                        days.put(day, new double[]{count, revenue});
+                        double[] month = months.computeIfAbsent(day.withDayOfMonth(1), k -> new double[2]);
+                        month[0] += count;
+                        month[1] += revenue;
+                    }
+                }
+                try (Statement st = c.createStatement()) {
+                    st.executeUpdate("DELETE FROM daily_revenue");
+                    st.executeUpdate("DELETE FROM monthly_revenue");
+                }
+                insertAll(c, "INSERT INTO daily_revenue (report_date, bucket, order_count, revenue) VALUES (?, 0, ?, ?)", days);
+                insertAll(c, "INSERT INTO monthly_revenue (month_start, bucket, order_count, revenue) VALUES (?, 0, ?, ?)", months);
+                c.commit();
+            } catch (SQLException | RuntimeException e) {
+                c.rollback();
+                throw e;
+            }
+        }
+        return days.size();
+    }
+
+    // Backfill once on a fresh install of the rollup tables
+    public static void backfillIfEmpty() throws SQLException {
+        Boolean needed = Dao.queryOne(
+                "SELECT EXISTS(SELECT 1 FROM daily_revenue), EXISTS(SELECT 1 FROM orders WHERE status != 'CANCELLED')",
+                Dao.NO_PARAMS, rs -> r -> !r.getBoolean(1) && r.getBoolean(2));
+        if (needed == null || !needed) return;
+        int days = backfill();
+        System.out.println("Revenue rollups backfilled for " + days + " days");
+    }
+
+    private static void insertAll(Connection c, String sql, Map<LocalDate, double[]> rows) throws SQLException {
+        try (PreparedStatement ps = c.prepareStatement(sql)) {
+            for (Map.Entry<LocalDate, double[]> e : rows.entrySet()) {
+                ps.setDate(1, Date.valueOf(e.getKey()));
+                ps.setInt(2, (int) e.getValue()[0]);
+                ps.setDouble(3, e.getValue()[1]);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    // Backfill job: java RevenueRollup
+    public static void main(String[] args) throws SQLException {
+        int days = backfill();
+        System.out.println("Revenue rollups rebuilt for " + days + " days");
+    }
+}
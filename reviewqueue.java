@@ -0,0 +1,353 @@
+// ReviewQueue.java
+import com.google.gson.Gson;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLDataException;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+// Write-behind queue for new reviews. A review is acknowledged once it has been
+// validated and appended (fsync'd) to a local journal; a single writer thread then
+// inserts queued reviews in JDBC batches of up to REVIEW_BATCH_SIZE, or whatever arrived
+// within REVIEW_BATCH_WINDOW_MS, and updates the rating stats as each batch commits.
+// When REVIEW_QUEUE reviews are in flight, submitters wait up to REVIEW_ENQUEUE_TIMEOUT_MS
+// and are then refused.
+//
+// Appends happen under the queue monitor but the fsync does not: one submitter forces
+// the journal for everything appended so far while the others wait for it (group
+// commit), so a burst costs a few fsyncs rather than one each.
+//
+// Committed batches are marked in the journal; on start the unmarked tail is replayed.
+// Each review carries a random key stored in reviews.journal_key, and replayed reviews
+// whose key is already there are skipped, so a crash between a commit and its mark
+// neither loses nor duplicates the batch.
+//
+// The journal belongs to its database (REVIEW_JOURNAL, else DBConnection.companionFile).
+// With h2-mem there is none: reviews are acknowledged once queued, and nothing from an
+// earlier run is replayed into the new, empty database.
+public class ReviewQueue {
+
+    private static final int BATCH_SIZE = Config.getInt("REVIEW_BATCH_SIZE", 200);
+    private static final long BATCH_WINDOW_MS = Config.getLong("REVIEW_BATCH_WINDOW_MS", 250);
+    private static final int QUEUE_CAPACITY = Config.getInt("REVIEW_QUEUE", 5_000);
+    private static final long ENQUEUE_TIMEOUT_MS = Config.getLong("REVIEW_ENQUEUE_TIMEOUT_MS", 200);
+    private static final long RETRY_DELAY_MS = Config.getLong("REVIEW_RETRY_DELAY_MS", 1_000);
+    private static final long DRAIN_TIMEOUT_MS = Config.getLong("REVIEW_DRAIN_TIMEOUT_MS", 30_000);
+
+    private static final Gson gson = new Gson();
+    private static final String JOURNAL_SUFFIX = "reviews.journal";
+    private static final ReviewQueue shared = new ReviewQueue(defaultJournal());
+
+    private final Path journalPath; // null: no journal
+    private final Semaphore capacity = new Semaphore(QUEUE_CAPACITY);
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private FileChannel journal; // guarded by this
+    private long lastSeq;        // guarded by this
+
+    // Group commit of the journal
+    private final Object syncLock = new Object();
+    private long durableSeq;     // guarded by syncLock: every entry up to here is fsync'd
+    private boolean syncing;     // guarded by syncLock: a submitter is forcing the journal
+    private volatile Thread writer;
+    private volatile boolean closed;
+
+    // One accepted review, as written to the journal
+    public static class Pending {
+        public long seq;
+        public String key; // reviews.journal_key; absent in journals written before it existed
+        public int userId, menuItemId, rating;
+        public String comment;
+        transient boolean holdsPermit;
+        transient boolean replayed;
+
+        Pending(long seq, String key, int userId, int menuItemId, int rating, String comment) {
+            this.seq = seq;
+            this.key = key;
+            this.userId = userId;
+            this.menuItemId = menuItemId;
+            this.rating = rating;
+            this.comment = comment;
+        }
+    }
+
+    // journalPath null: reviews are only held in memory until written
+    public ReviewQueue(Path journalPath) {
+        this.journalPath = journalPath;
+    }
+
+    // The journal used to sit in the working directory; one left there is moved next to
+    // the database so its reviews are still replayed
+    private static Path defaultJournal() {
+        String configured = Config.get("REVIEW_JOURNAL", null);
+        if (configured != null) return Path.of(configured);
+        Path path = DBConnection.companionFile(JOURNAL_SUFFIX);
+        Path legacy = Path.of(JOURNAL_SUFFIX);
+        if (path != null && Files.exists(legacy) && !Files.exists(path)) {
+            try {
+                Path dir = path.toAbsolutePath().getParent();
+                if (dir != null) Files.createDirectories(dir);
+                Files.move(legacy, path);
+                System.out.println("Review journal: moved " + legacy + " to " + path);
+            } catch (IOException e) {
+                System.err.println("Review journal: could not move " + legacy + " to " + path + ": " + e.getMessage());
+            }
+        }
+        return path;
+    }
+
+    public static ReviewQueue shared() {
+        return shared;
+    }
+
+    // Reviews accepted but not yet committed
+    public int depth() {
+        return queue.size();
+    }
+
+    // Journal and enqueue a validated review. Throws IllegalStateException if the
+    // queue stays full (or the server is shutting down).
+    public void submit(int userId, int menuItemId, int rating, String comment) throws IOException {
+        start();
+        try {
+            if (closed || !capacity.tryAcquire(ENQUEUE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("Reviews are busy, try again");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queueing review");
+        }
+        long seq;
+        try {
+            synchronized (this) {
+                Pending p = new Pending(lastSeq + 1, UUID.randomUUID().toString(), userId, menuItemId, rating, comment);
+                if (journalPath != null) append("R " + gson.toJson(p));
+                lastSeq = p.seq;
+                p.holdsPermit = true;
+                queue.add(p); // in seq order, so a "C" mark never covers a review not yet written
+                seq = p.seq;
+            }
+        } catch (IOException | RuntimeException e) {
+            capacity.release();
+            throw e;
+        }
+        // If this fails the review is still queued and may be saved; the caller only
+        // learns that it was not acknowledged
+        if (journalPath != null) awaitDurable(seq);
+    }
+
+    // Replay the journal and start the writer. Called at boot so reviews left over from
+    // a crash are written without waiting for the next submission; safe to call again.
+    public void start() throws IOException {
+        if (writer != null) return;
+        synchronized (this) {
+            if (writer != null) return;
+            recover();
+            Thread t = new Thread(this::writeLoop, "review-writer");
+            t.setDaemon(true);
+            t.start();
+            writer = t;
+            Runtime.getRuntime().addShutdownHook(new Thread(this::drain, "review-queue-drain"));
+        }
+    }
+
+    // ---------------- Journal ----------------
+    // One line per event: "R <json>" for an accepted review, "C <seq>" once every
+    // review up to seq has been committed. Truncated whenever nothing is outstanding.
+
+    private void recover() throws IOException {
+        if (journalPath == null) return;
+        List<Pending> entries = new ArrayList<>();
+        long committed = 0;
+        if (Files.exists(journalPath)) {
+            try (BufferedReader in = Files.newBufferedReader(journalPath, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    try {
+                        if (line.startsWith("R ")) entries.add(gson.fromJson(line.substring(2), Pending.class));
+                        else if (line.startsWith("C ")) committed = Math.max(committed, Long.parseLong(line.substring(2).trim()));
+                    } catch (RuntimeException e) {
+                        System.err.println("Review journal: skipping unreadable line (torn write?)");
+                    }
+                }
+            }
+        }
+        Path dir = journalPath.toAbsolutePath().getParent();
+        if (dir != null) Files.createDirectories(dir);
+        journal = FileChannel.open(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        int replayed = 0;
+        for (Pending p : entries) {
+            lastSeq = Math.max(lastSeq, p.seq);
+            if (p.seq <= committed) continue;
+            p.replayed = true;
+            p.holdsPermit = capacity.tryAcquire(); // replay even past capacity
+            queue.add(p);
+            replayed++;
+        }
+        lastSeq = Math.max(lastSeq, committed);
+        synchronized (syncLock) {
+            durableSeq = lastSeq; // read back from disk
+        }
+        if (replayed > 0) System.out.println("Review journal: replaying " + replayed + " uncommitted review(s)");
+        else truncateIfIdle(lastSeq);
+    }
+
+    // Caller holds the monitor. Not forced: see awaitDurable.
+    private void append(String line) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+        while (buf.hasRemaining()) journal.write(buf);
+    }
+
+    // Wait until the journal is fsync'd up to seq. The first waiter to find no fsync in
+    // progress forces everything appended so far; the rest wait and are usually covered.
+    private void awaitDurable(long seq) throws IOException {
+        while (true) {
+            synchronized (syncLock) {
+                while (durableSeq < seq && syncing) {
+                    try {
+                        syncLock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted while queueing review");
+                    }
+                }
+                if (durableSeq >= seq) return;
+                syncing = true;
+            }
+            long target = 0;
+            boolean forced = false;
+            try {
+                FileChannel channel;
+                synchronized (this) {
+                    target = lastSeq; // everything up to here has been written
+                    channel = journal;
+                }
+                channel.force(false);
+                forced = true;
+            } finally {
+                synchronized (syncLock) {
+                    syncing = false;
+                    if (forced) durableSeq = Math.max(durableSeq, target);
+                    syncLock.notifyAll();
+                }
+            }
+        }
+    }
+
+    // The mark is not forced: if it is lost, the batch is replayed and skipped by key
+    private synchronized void markCommitted(long seq) {
+        if (journalPath == null) return;
+        try {
+            if (!truncateIfIdle(seq)) append("C " + seq);
+        } catch (IOException e) {
+            // The rows are in the database; at worst they are replayed after a crash
+            System.err.println("Review journal: could not mark " + seq + " committed: " + e.getMessage());
+        }
+    }
+
+    // Caller holds the monitor. Start the journal over once nothing is outstanding.
+    private boolean truncateIfIdle(long committedSeq) throws IOException {
+        if (committedSeq != lastSeq || !queue.isEmpty()) return false;
+        journal.truncate(0);
+        journal.force(false);
+        return true;
+    }
+
+    // ---------------- Write-behind ----------------
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>(BATCH_SIZE);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                // Collect more until the batch is full or the window closes
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(BATCH_WINDOW_MS);
+                while (batch.size() < BATCH_SIZE && !closed) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) break;
+                    Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                    queue.drainTo(batch, BATCH_SIZE - batch.size());
+                }
+                queue.drainTo(batch, BATCH_SIZE - batch.size());
+                long endSeq = batch.get(batch.size() - 1).seq;
+                while (!flush(batch, endSeq)) {
+                    if (closed) {
+                        System.err.println("Review writer: leaving " + batch.size() + " review(s) in the journal for the next start");
+                        return;
+                    }
+                    TimeUnit.MILLISECONDS.sleep(RETRY_DELAY_MS);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    // Insert the batch in one transaction. If that fails, fall back to row by row so a
+    // single bad review (menu item since deleted, ...) is dropped instead of blocking the
+    // rest; rows that are done leave the batch. Returns false if the database is
+    // unavailable and what is left should be retried. Once all are done, the journal is
+    // marked up to endSeq.
+    private boolean flush(List<Pending> batch, long endSeq) {
+        try {
+            Review.insertReviews(batch);
+            for (Pending p : batch) finished(p);
+        } catch (SQLException | RuntimeException batchError) {
+            System.err.println("Review batch of " + batch.size() + " failed, retrying row by row: " + batchError.getMessage());
+            for (Iterator<Pending> it = batch.iterator(); it.hasNext(); ) {
+                Pending p = it.next();
+                try {
+                    Review.insertReviews(List.of(p));
+                } catch (SQLIntegrityConstraintViolationException | SQLDataException e) {
+                    System.err.println("Dropping review " + p.seq + " (user " + p.userId + ", item " + p.menuItemId + "): " + e.getMessage());
+                } catch (SQLException | RuntimeException e) {
+                    System.err.println("Review writer: database unavailable: " + e.getMessage());
+                    return false;
+                }
+                finished(p);
+                it.remove();
+            }
+        }
+        markCommitted(endSeq);
+        return true;
+    }
+
+    private void finished(Pending p) {
+        if (p.holdsPermit) capacity.release();
+        p.holdsPermit = false;
+    }
+
+    // Shutdown hook: refuse new reviews and let the writer finish everything queued
+    private void drain() {
+        closed = true;
+        Thread t = writer;
+        if (t == null) return;
+        try {
+            t.join(DRAIN_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (t.isAlive()) System.err.println("Review writer still busy after " + DRAIN_TIMEOUT_MS + " ms; " + queue.size() + " review(s) remain in the journal");
+    }
+}
@@ -4,7 +4,7 @@ CREATE TABLE IF NOT EXISTS users (
     id INT AUTO_INCREMENT PRIMARY KEY,
     name VARCHAR(100) NOT NULL,
     email VARCHAR(100) UNIQUE NOT NULL,
-    password VARCHAR(64) NOT NULL, -- SHA-256 hash
+    password VARCHAR(255) NOT NULL, -- PBKDF2 hash (legacy rows: SHA-256 hex)
     wallet DECIMAL(10,2) DEFAULT 0.00,
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
 );
@@ -49,6 +49,7 @@ CREATE TABLE IF NOT EXISTS payments (
     method VARCHAR(50) NOT NULL,
     status VARCHAR(50) NOT NULL,
     transaction_id VARCHAR(100) UNIQUE NOT NULL,
+    idempotency_key VARCHAR(100) UNIQUE, -- client-supplied, dedupes retried submissions
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     FOREIGN KEY (order_id) REFERENCES orders(id) ON DELETE CASCADE
 );
@@ -60,8 +61,40 @@ CREATE TABLE IF NOT EXISTS reviews (
     menu_item_id INT NOT NULL,
     rating INT CHECK (rating >= 1 AND rating <= 5),
     comment TEXT,
+    journal_key CHAR(36) UNIQUE, -- ReviewQueue journal entry, dedupes replays after a crash
     created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
     FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE,
     FOREIGN KEY (menu_item_id) REFERENCES menu_items(id) ON DELETE CASCADE
 );
 
+-- Daily revenue rollup (non-cancelled orders), maintained by RevenueRollup; each day
+-- is split over a few stripes (bucket) so concurrent orders update different rows
+CREATE TABLE IF NOT EXISTS daily_revenue (
+    report_date DATE NOT NULL,
+    bucket TINYINT NOT NULL DEFAULT 0,
+    order_count INT NOT NULL DEFAULT 0,
+    revenue DECIMAL(12,2) NOT NULL DEFAULT 0.00,
+    PRIMARY KEY (report_date, bucket)
+);
+
+-- Monthly revenue rollup, keyed by the first day of the month and the stripe
+CREATE TABLE IF NOT EXISTS monthly_revenue (
+    month_start DATE NOT NULL,
+    bucket TINYINT NOT NULL DEFAULT 0,
+    order_count INT NOT NULL DEFAULT 0,
+    revenue DECIMAL(12,2) NOT NULL DEFAULT 0.00,
+    PRIMARY KEY (month_start, bucket)
+);
+
+-- Wallet ledger (append-only), written in batches by Wallet
+CREATE TABLE IF NOT EXISTS wallet_ledger (
+    id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    user_id INT NOT NULL,
+    amount DECIMAL(10,2) NOT NULL, -- positive = credit, negative = debit
+    balance_after DECIMAL(10,2) NOT NULL,
+    reason VARCHAR(50) NOT NULL,
+    reference VARCHAR(100),
+    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
+    FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE
+);
+
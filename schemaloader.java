@@ -0,0 +1,81 @@
+// SchemaLoader.java
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+// Applies a SQL script such as schema.sql statement by statement. Used by DBConnection
+// to bootstrap the embedded H2 modes, and as a setup job for fresh MySQL installs.
+public class SchemaLoader {
+
+    public static final String DEFAULT_SCRIPT = Config.get("SCHEMA_FILE", "schema.sql");
+
+    // Apply the default schema through a pooled connection
+    public static int applyDefault() throws SQLException, IOException {
+        try (Connection c = DBConnection.getConnection()) {
+            return apply(c, Path.of(DEFAULT_SCRIPT));
+        }
+    }
+
+    public static int apply(Connection c, Path script) throws SQLException, IOException {
+        return apply(c, Files.readString(script, StandardCharsets.UTF_8));
+    }
+
+    // Runs each statement in order; returns how many were executed
+    public static int apply(Connection c, String script) throws SQLException {
+        List<String> statements = split(script);
+        try (Statement st = c.createStatement()) {
+            for (String sql : statements) st.execute(sql);
+        }
+        if (!c.getAutoCommit()) c.commit();
+        return statements.size();
+    }
+
+    // Split on ';' at the end of a statement, dropping "--" comments and blank lines.
+    // Quote-aware, so semicolons and dashes inside string literals are left alone.
+    static List<String> split(String script) {
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean inString = false;
+        int i = 0;
+        while (i < script.length()) {
+            char ch = script.charAt(i);
+            if (inString) {
+                current.append(ch);
+                if (ch == '\'') inString = false;
+            } else if (ch == '\'') {
+                current.append(ch);
+                inString = true;
+            } else if (ch == '-' && i + 1 < script.length() && script.charAt(i + 1) == '-') {
+                while (i < script.length() && script.charAt(i) != '\n') i++;
+                continue;
+            } else if (ch == ';') {
+                addStatement(statements, current);
+            } else {
+                current.append(ch);
+            }
+            i++;
+        }
+        addStatement(statements, current);
+        return statements;
+    }
+
+    private static void addStatement(List<String> statements, StringBuilder current) {
+        String sql = current.toString().trim();
+        if (!sql.isEmpty()) statements.add(sql);
+        current.setLength(0);
+    }
+
+    // Setup job: java SchemaLoader [script]
+    public static void main(String[] args) throws Exception {
+        try (Connection c = DBConnection.getConnection()) {
+            int n = apply(c, Path.of(args.length > 0 ? args[0] : DEFAULT_SCRIPT));
+            System.out.println("Applied " + n + " statements");
+        }
+    }
+}
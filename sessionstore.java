@@ -0,0 +1,152 @@
+// SessionStore.java
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Opaque session tokens issued at login. Sessions live in a bounded LRU map with idle
+// and absolute expiry, so resolving a token to its User never touches the database.
+public class SessionStore {
+
+    public static final String USER_ATTRIBUTE = "canteen.user";
+    public static final String TOKEN_ATTRIBUTE = "canteen.session";
+    public static final String COOKIE_NAME = "session";
+
+    private static final SessionStore shared = new SessionStore(
+            Config.getInt("SESSION_MAX", 50_000),
+            Config.getLong("SESSION_IDLE_MS", 30 * 60_000),
+            Config.getLong("SESSION_ABSOLUTE_MS", 12 * 60 * 60_000));
+
+    private final SecureRandom random = new SecureRandom();
+    private final long idleMs, absoluteMs;
+    private final Map<String, Session> sessions; // access-ordered: eldest = least recently used
+
+    public static class Session {
+        public final String token;
+        public final User user;
+        public final long createdAt;
+        volatile long lastAccess;
+
+        Session(String token, User user, long now) {
+            this.token = token;
+            this.user = user;
+            this.createdAt = now;
+            this.lastAccess = now;
+        }
+    }
+
+    public SessionStore(int maxSessions, long idleMs, long absoluteMs) {
+        this.idleMs = idleMs;
+        this.absoluteMs = absoluteMs;
+        this.sessions = new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Session> eldest) {
+                return size() > maxSessions;
+            }
+        };
+    }
+
+    public static SessionStore shared() {
+        return shared;
+    }
+
+    public String create(User user) {
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        Session session = new Session(token, user, System.currentTimeMillis());
+        synchronized (sessions) {
+            sessions.put(token, session);
+        }
+        return token;
+    }
+
+    // The session's user, or null if the token is unknown, revoked or expired
+    public User resolve(String token) {
+        if (token == null || token.isEmpty()) return null;
+        long now = System.currentTimeMillis();
+        synchronized (sessions) {
+            Session s = sessions.get(token);
+            if (s == null) return null;
+            if (now - s.lastAccess > idleMs || now - s.createdAt > absoluteMs) {
+                sessions.remove(token);
+                return null;
+            }
+            s.lastAccess = now;
+            return s.user;
+        }
+    }
+
+    public boolean revoke(String token) {
+        if (token == null) return false;
+        synchronized (sessions) {
+            return sessions.remove(token) != null;
+        }
+    }
+
+    // Log a user out everywhere
+    public int revokeUser(int userId) {
+        int removed = 0;
+        synchronized (sessions) {
+            Iterator<Session> it = sessions.values().iterator();
+            while (it.hasNext()) {
+                if (it.next().user.id == userId) {
+                    it.remove();
+                    removed++;
+                }
+            }
+        }
+        return removed;
+    }
+
+    public int size() {
+        synchronized (sessions) {
+            return sessions.size();
+        }
+    }
+
+    static String tokenFrom(HttpExchange exchange) {
+        String auth = exchange.getRequestHeaders().getFirst("Authorization");
+        if (auth != null && auth.regionMatches(true, 0, "Bearer ", 0, 7)) {
+            return auth.substring(7).trim();
+        }
+        String cookies = exchange.getRequestHeaders().getFirst("Cookie");
+        if (cookies != null) {
+            for (String cookie : cookies.split(";")) {
+                String c = cookie.trim();
+                if (c.startsWith(COOKIE_NAME + "=")) return c.substring(COOKIE_NAME.length() + 1);
+            }
+        }
+        return null;
+    }
+
+    // Attaches the session's User (if any) to the exchange; handlers decide whether it's required
+    public static class SessionFilter extends Filter {
+        private final SessionStore store;
+
+        public SessionFilter(SessionStore store) {
+            this.store = store;
+        }
+
+        @Override
+        public void doFilter(HttpExchange exchange, Chain chain) throws IOException {
+            String token = tokenFrom(exchange);
+            User user = store.resolve(token);
+            if (user != null) {
+                exchange.setAttribute(USER_ATTRIBUTE, user);
+                exchange.setAttribute(TOKEN_ATTRIBUTE, token);
+            }
+            chain.doFilter(exchange);
+        }
+
+        @Override
+        public String description() {
+            return "Resolves session tokens to users";
+        }
+    }
+}
@@ -0,0 +1,145 @@
+// SlotScheduler.java
+import java.sql.*;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Tracks how many of today's orders are booked into each pickup slot so the kitchen
+// is never handed more than a slot's capacity. Counters are lock-free; the database is
+// read once per day (or per restart) to seed them, never per request.
+public class SlotScheduler {
+
+    // The pickup windows offered by the order page (index.html)
+    private static final String DEFAULT_SLOTS = "10:00-10:15,12:30-12:45,13:00-13:15,17:30-17:45";
+
+    private static volatile SlotScheduler shared;
+
+    private final int capacity;
+    private final Set<String> slots; // empty = accept any slot name
+    private volatile Day day;
+
+    public static class SlotAvailability {
+        public String slot;
+        public int capacity, reserved, available;
+
+        public SlotAvailability(String slot, int capacity, int reserved) {
+            this.slot = slot;
+            this.capacity = capacity;
+            this.reserved = reserved;
+            this.available = Math.max(0, capacity - reserved);
+        }
+    }
+
+    // Reservation counters for one calendar day
+    private static final class Day {
+        final LocalDate date;
+        final Map<String, AtomicInteger> reserved = new ConcurrentHashMap<>();
+
+        Day(LocalDate date) {
+            this.date = date;
+        }
+
+        AtomicInteger counter(String slot) {
+            return reserved.computeIfAbsent(slot, k -> new AtomicInteger());
+        }
+    }
+
+    public SlotScheduler(int capacity, List<String> slots) {
+        this.capacity = capacity;
+        this.slots = new LinkedHashSet<>(slots);
+    }
+
+    public static SlotScheduler shared() {
+        SlotScheduler s = shared;
+        if (s == null) {
+            synchronized (SlotScheduler.class) {
+                s = shared;
+                if (s == null) {
+                    // PICKUP_SLOTS=* accepts any slot name
+                    String configured = Config.get("PICKUP_SLOTS", DEFAULT_SLOTS);
+                    List<String> slots = new ArrayList<>();
+                    if (!configured.equals("*")) {
+                        for (String slot : configured.split(",")) {
+                            if (!slot.isBlank()) slots.add(slot.trim());
+                        }
+                    }
+                    s = new SlotScheduler(Config.getInt("SLOT_CAPACITY", 50), slots);
+                    shared = s;
+                }
+            }
+        }
+        return s;
+    }
+
+    public boolean isKnownSlot(String slot) {
+        return slots.isEmpty() || slots.contains(slot);
+    }
+
+    // Atomically take one unit of capacity in today's slot; false when the slot is full
+    public boolean tryReserve(String slot) throws SQLException {
+        AtomicInteger counter = today().counter(slot);
+        while (true) {
+            int current = counter.get();
+            if (current >= capacity) return false;
+            if (counter.compareAndSet(current, current + 1)) return true;
+        }
+    }
+
+    // Give back capacity for an order booked on the given day (no-op for earlier days)
+    public void release(String slot, LocalDate orderDate) {
+        Day d = day;
+        if (d == null || !d.date.equals(orderDate)) return;
+        AtomicInteger counter = d.reserved.get(slot);
+        if (counter == null) return;
+        counter.getAndUpdate(n -> n > 0 ? n - 1 : 0);
+    }
+
+    public List<SlotAvailability> availability() throws SQLException {
+        Day d = today();
+        List<SlotAvailability> result = new ArrayList<>();
+        if (slots.isEmpty()) {
+            List<String> names = new ArrayList<>(d.reserved.keySet());
+            names.sort(null);
+            for (String slot : names) result.add(new SlotAvailability(slot, capacity, d.reserved.get(slot).get()));
+        } else {
+            for (String slot : slots) {
+                AtomicInteger counter = d.reserved.get(slot);
+                result.add(new SlotAvailability(slot, capacity, counter == null ? 0 : counter.get()));
+            }
+        }
+        return result;
+    }
+
+    // Current day's counters, seeding them from the database on first use and at midnight
+    private Day today() throws SQLException {
+        LocalDate now = LocalDate.now();
+        Day d = day;
+        if (d != null && d.date.equals(now)) return d;
+        synchronized (this) {
+            d = day;
+            if (d != null && d.date.equals(now)) return d;
+            d = load(now);
+            day = d;
+            return d;
+        }
+    }
+
+    // Orders per slot for one day: start of day, start of next day
+    static final String COUNT_BY_SLOT_SQL = "SELECT time_slot, COUNT(*) FROM orders " +
+            "WHERE created_at >= ? AND created_at < ? AND status != 'CANCELLED' GROUP BY time_slot";
+
+    private Day load(LocalDate date) throws SQLException {
+        Day d = new Day(date);
+        List<Map.Entry<String, Integer>> counts = Dao.query(COUNT_BY_SLOT_SQL, ps -> {
+            ps.setTimestamp(1, Timestamp.valueOf(date.atStartOfDay()));
+            ps.setTimestamp(2, Timestamp.valueOf(date.plusDays(1).atStartOfDay()));
+        }, rs -> r -> Map.entry(r.getString(1), r.getInt(2)));
+        for (Map.Entry<String, Integer> e : counts) d.counter(e.getKey()).set(e.getValue());
+        return d;
+    }
+}
@@ -0,0 +1,163 @@
+// StaticAssets.java
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+// In-memory copy of the web assets (index.html, style.css, script.js, ...).
+// Everything a response needs - bytes, gzip variant, ETag, Last-Modified - is computed
+// when a file is loaded, so serving never touches the filesystem. A watcher thread
+// reloads files that change on disk.
+public class StaticAssets {
+
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+
+    private final Path root;
+    private final String cacheControl;
+    private final Map<String, Asset> assets = new ConcurrentHashMap<>();
+
+    public static class Asset {
+        public final String path, contentType, etag, gzipEtag, lastModified, cacheControl;
+        public final long lastModifiedMillis;
+        public final byte[] bytes;
+        public final byte[] gzip; // null when compression doesn't pay off
+
+        Asset(String path, String contentType, byte[] bytes, byte[] gzip, long lastModifiedMillis, String cacheControl) {
+            this.path = path;
+            this.contentType = contentType;
+            this.bytes = bytes;
+            this.gzip = gzip;
+            this.lastModifiedMillis = lastModifiedMillis - lastModifiedMillis % 1000; // HTTP dates have 1 s resolution
+            this.lastModified = HTTP_DATE.format(Instant.ofEpochMilli(this.lastModifiedMillis));
+            String digest = sha256Base64Url(bytes);
+            this.etag = "\"" + digest + "\"";
+            this.gzipEtag = "\"" + digest + "-gz\"";
+            this.cacheControl = cacheControl;
+        }
+    }
+
+    public StaticAssets(String webDir, int maxAgeSeconds) throws IOException {
+        this.root = Path.of(webDir).toAbsolutePath().normalize();
+        this.cacheControl = "public, max-age=" + maxAgeSeconds;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(root)) {
+            for (Path file : files) load(file);
+        }
+    }
+
+    public Asset get(String path) {
+        return assets.get(path);
+    }
+
+    public int size() {
+        return assets.size();
+    }
+
+    // Reload changed files in the background; returns the daemon thread running the watcher
+    public Thread watch() throws IOException {
+        WatchService watcher = FileSystems.getDefault().newWatchService();
+        root.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        Thread t = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = watcher.take();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            reloadAll();
+                            continue;
+                        }
+                        Path file = root.resolve((Path) event.context());
+                        if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                            assets.remove("/" + file.getFileName());
+                        } else {
+                            load(file);
+                        }
+                    }
+                    if (!key.reset()) break;
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // shutting down
+            }
+        }, "static-asset-watcher");
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
+    private void reloadAll() {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(root)) {
+            for (Path file : files) load(file);
+        } catch (IOException e) {
+            System.err.println("Static asset rescan failed: " + e.getMessage());
+        }
+    }
+
+    // Only known web file types are served; sources, schema and the like stay private
+    private void load(Path file) {
+        String name = file.getFileName().toString();
+        String contentType = contentType(name);
+        if (contentType == null || !Files.isRegularFile(file)) return;
+        try {
+            byte[] bytes = Files.readAllBytes(file);
+            long modified = Files.getLastModifiedTime(file).toMillis();
+            byte[] gzip = null;
+            if (isCompressible(contentType)) {
+                byte[] compressed = gzip(bytes);
+                if (compressed.length < bytes.length) gzip = compressed;
+            }
+            String cache = contentType.startsWith("text/html") ? "no-cache" : cacheControl;
+            assets.put("/" + name, new Asset("/" + name, contentType, bytes, gzip, modified, cache));
+        } catch (IOException e) {
+            System.err.println("Could not load static asset " + file + ": " + e.getMessage());
+        }
+    }
+
+    static String contentType(String name) {
+        if (name.endsWith(".html")) return "text/html; charset=utf-8";
+        if (name.endsWith(".css")) return "text/css; charset=utf-8";
+        if (name.endsWith(".js")) return "application/javascript; charset=utf-8";
+        if (name.endsWith(".json")) return "application/json; charset=utf-8";
+        if (name.endsWith(".svg")) return "image/svg+xml";
+        if (name.endsWith(".png")) return "image/png";
+        if (name.endsWith(".jpg") || name.endsWith(".jpeg")) return "image/jpeg";
+        if (name.endsWith(".ico")) return "image/x-icon";
+        return null;
+    }
+
+    private static boolean isCompressible(String contentType) {
+        return contentType.startsWith("text/") || contentType.startsWith("application/") || contentType.startsWith("image/svg");
+    }
+
+    static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static String sha256Base64Url(byte[] data) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(data);
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(hash).substring(0, 22);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
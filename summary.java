@@ -1,190 +1,93 @@
 // OrderSummary.java
 import java.sql.*;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 public class OrderSummary {
 
+    private final OrderSummaryRenderer renderer = new OrderSummaryRenderer();
+
     // Generate summary for one order
     public String generateOrderSummary(int orderId) throws SQLException {
-        StringBuilder summary = new StringBuilder();
-        summary.append("Order ").append(orderId).append(" Summary:\n");
-        summary.append("========================================\n");
-
-        try (Connection c = DBConnection.getConnection()) {
-            // Order details
-            String orderSql = "SELECT u.name as user_name, o.time_slot, o.total_amount, o.status, o.created_at " +
-                             "FROM orders o JOIN users u ON o.user_id = u.id WHERE o.id = ?";
-            try (PreparedStatement orderStmt = c.prepareStatement(orderSql)) {
-                orderStmt.setInt(1, orderId);
-                try (ResultSet orderRs = orderStmt.executeQuery()) {
-                    if (orderRs.next()) {
-                        summary.append("User: ").append(orderRs.getString("user_name")).append("\n");
-                        summary.append("Time Slot: ").append(orderRs.getString("time_slot")).append("\n");
-                        summary.append("Total Amount: ₹").append(String.format("%.2f", orderRs.getDouble("total_amount"))).append("\n");
-                        summary.append("Status: ").append(orderRs.getString("status")).append("\n");
-                        summary.append("Order Date: ").append(orderRs.getTimestamp("created_at")).append("\n");
-                    }
-                }
-            }
-
-            // Items
-            summary.append("\nItems:\n");
-            summary.append("------\n");
-            
-            String itemsSql = "SELECT mi.name, oi.quantity, oi.price, (oi.quantity * oi.price) as item_total " +
-                            "FROM order_items oi JOIN menu_items mi ON oi.menu_item_id = mi.id " +
-                            "WHERE oi.order_id = ?";
-            try (PreparedStatement itemsStmt = c.prepareStatement(itemsSql)) {
-                itemsStmt.setInt(1, orderId);
-                try (ResultSet itemsRs = itemsStmt.executeQuery()) {
-                    double total = 0;
-                    while (itemsRs.next()) {
-                        String itemName = itemsRs.getString("name");
-                        int quantity = itemsRs.getInt("quantity");
-                        double price = itemsRs.getDouble("price");
-                        double itemTotal = itemsRs.getDouble("item_total");
-                        total += itemTotal;
-                        
-                        summary.append("- ").append(itemName)
-                              .append(" x").append(quantity)
-                              .append(" @ ₹").append(String.format("%.2f", price))
-                              .append(" = ₹").append(String.format("%.2f", itemTotal))
-                              .append("\n");
-                    }
-                    summary.append("\nGrand Total: ₹").append(String.format("%.2f", total)).append("\n");
-                }
-            }
-        }
-        return summary.toString();
+        return renderer.render(orderId, OrderSummaryRenderer.Format.TEXT);
     }
 
     // Generate detailed order summary with HTML format
     public String generateOrderSummaryHTML(int orderId) throws SQLException {
-        StringBuilder html = new StringBuilder();
-        html.append("<div class='order-summary'>");
-        html.append("<h3>Order #").append(orderId).append(" Summary</h3>");
-
-        try (Connection c = DBConnection.getConnection()) {
-            // Order details
-            String orderSql = "SELECT u.name as user_name, o.time_slot, o.total_amount, o.status, o.created_at " +
-                             "FROM orders o JOIN users u ON o.user_id = u.id WHERE o.id = ?";
-            try (PreparedStatement orderStmt = c.prepareStatement(orderSql)) {
-                orderStmt.setInt(1, orderId);
-                try (ResultSet orderRs = orderStmt.executeQuery()) {
-                    if (orderRs.next()) {
-                        html.append("<div class='order-details'>");
-                        html.append("<p><strong>User:</strong> ").append(orderRs.getString("user_name")).append("</p>");
-                        html.append("<p><strong>Time Slot:</strong> ").append(orderRs.getString("time_slot")).append("</p>");
-                        html.append("<p><strong>Total Amount:</strong> ₹").append(String.format("%.2f", orderRs.getDouble("total_amount"))).append("</p>");
-                        html.append("<p><strong>Status:</strong> ").append(orderRs.getString("status")).append("</p>");
-                        html.append("<p><strong>Order Date:</strong> ").append(orderRs.getTimestamp("created_at")).append("</p>");
-                        html.append("</div>");
-                    }
-                }
-            }
-
-            // Items
-            html.append("<div class='order-items'>");
-            html.append("<h4>Items:</h4>");
-            html.append("<table border='1' style='width:100%; border-collapse: collapse;'>");
-            html.append("<tr><th>Item</th><th>Quantity</th><th>Price</th><th>Total</th></tr>");
-            
-            String itemsSql = "SELECT mi.name, oi.quantity, oi.price " +
-                            "FROM order_items oi JOIN menu_items mi ON oi.menu_item_id = mi.id " +
-                            "WHERE oi.order_id = ?";
-            try (PreparedStatement itemsStmt = c.prepareStatement(itemsSql)) {
-                itemsStmt.setInt(1, orderId);
-                try (ResultSet itemsRs = itemsStmt.executeQuery()) {
-                    double total = 0;
-                    while (itemsRs.next()) {
-                        String itemName = itemsRs.getString("name");
-                        int quantity = itemsRs.getInt("quantity");
-                        double price = itemsRs.getDouble("price");
-                        double itemTotal = price * quantity;
-                        total += itemTotal;
-                        
-                        html.append("<tr>");
-                        html.append("<td>").append(itemName).append("</td>");
-                        html.append("<td>").append(quantity).append("</td>");
-                        html.append("<td>₹").append(String.format("%.2f", price)).append("</td>");
-                        html.append("<td>₹").append(String.format("%.2f", itemTotal)).append("</td>");
-                        html.append("</tr>");
-                    }
-                    html.append("<tr style='font-weight: bold;'>");
-                    html.append("<td colspan='3' style='text-align: right;'>Grand Total:</td>");
-                    html.append("<td>₹").append(String.format("%.2f", total)).append("</td>");
-                    html.append("</tr>");
-                }
-            }
-            html.append("</table>");
-            html.append("</div>");
-            html.append("</div>");
-        }
-        return html.toString();
+        return renderer.render(orderId, OrderSummaryRenderer.Format.HTML);
+    }
+
+    // Generate order summary as JSON
+    public String generateOrderSummaryJSON(int orderId) throws SQLException {
+        return renderer.render(orderId, OrderSummaryRenderer.Format.JSON);
+    }
+
+    // Summaries for many orders at once (kitchen display), keyed by order id
+    public Map<Integer, String> generateOrderSummaries(List<Integer> orderIds, OrderSummaryRenderer.Format format) throws SQLException {
+        return renderer.renderAll(orderIds, format);
     }
 
-    // Daily report
+    // Daily report (the day's stripes of the daily_revenue rollup)
     public DailyReport generateDailyReport(String date) throws SQLException {
-        try (Connection c = DBConnection.getConnection();
-             PreparedStatement ps = c.prepareStatement(
-                "SELECT COUNT(*), SUM(total_amount) FROM orders WHERE DATE(created_at) = ? AND status != 'CANCELLED'")) {
-            ps.setString(1, date);
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) {
-                int count = rs.getInt(1);
-                double revenue = rs.getDouble(2);
-                if (rs.wasNull()) revenue = 0.0;
-                return new DailyReport(date, count, revenue);
-            }
-        }
-        return new DailyReport(date, 0, 0);
+        Date day = Date.valueOf(LocalDate.parse(date));
+        return Dao.queryOne("SELECT COALESCE(SUM(order_count), 0), COALESCE(SUM(revenue), 0) FROM daily_revenue WHERE report_date = ?",
+                ps -> ps.setDate(1, day), rs -> r -> new DailyReport(date, r.getInt(1), r.getDouble(2)));
     }
 
-    // Monthly report
+    // Monthly report (the month's stripes of the monthly_revenue rollup)
     public MonthlyReport generateMonthlyReport(int year, int month) throws SQLException {
-        String datePattern = year + "-" + String.format("%02d", month) + "%";
-        try (Connection c = DBConnection.getConnection();
-             PreparedStatement ps = c.prepareStatement(
-                "SELECT COUNT(*), SUM(total_amount) FROM orders WHERE created_at LIKE ? AND status != 'CANCELLED'")) {
-            ps.setString(1, datePattern);
-            ResultSet rs = ps.executeQuery();
-            if (rs.next()) {
-                int count = rs.getInt(1);
-                double revenue = rs.getDouble(2);
-                if (rs.wasNull()) revenue = 0.0;
-                return new MonthlyReport(year, month, count, revenue);
-            }
+        Date monthStart = Date.valueOf(LocalDate.of(year, month, 1));
+        return Dao.queryOne("SELECT COALESCE(SUM(order_count), 0), COALESCE(SUM(revenue), 0) FROM monthly_revenue WHERE month_start = ?",
+                ps -> ps.setDate(1, monthStart), rs -> r -> new MonthlyReport(year, month, r.getInt(1), r.getDouble(2)));
+    }
+
+    // Report over an inclusive date range, with a per-day breakdown (days without orders are omitted)
+    public RangeReport generateRangeReport(LocalDate from, LocalDate to) throws SQLException {
+        RangeReport report = new RangeReport(from.toString(), to.toString());
+        report.days = Dao.query(
+                "SELECT report_date, SUM(order_count), SUM(revenue) FROM daily_revenue " +
+                "WHERE report_date BETWEEN ? AND ? GROUP BY report_date ORDER BY report_date",
+                ps -> {
+                    ps.setDate(1, Date.valueOf(from));
+                    ps.setDate(2, Date.valueOf(to));
+                },
+                DailyReport.MAPPER);
+        for (DailyReport day : report.days) {
+            report.totalOrders += day.totalOrders;
+            report.revenue += day.revenue;
         }
-        return new MonthlyReport(year, month, 0, 0);
+        report.revenue = Math.round(report.revenue * 100) / 100.0;
+        return report;
+    }
+
+    // Last N days including today
+    public RangeReport generateLastDaysReport(int days) throws SQLException {
+        LocalDate today = LocalDate.now();
+        return generateRangeReport(today.minusDays(days - 1L), today);
     }
 
-    // Get popular menu items
+    // Calendar quarter (1-4)
+    public RangeReport generateQuarterlyReport(int year, int quarter) throws SQLException {
+        if (quarter < 1 || quarter > 4) throw new IllegalArgumentException("Quarter must be between 1 and 4");
+        LocalDate start = LocalDate.of(year, (quarter - 1) * 3 + 1, 1);
+        return generateRangeReport(start, start.plusMonths(3).minusDays(1));
+    }
+
+    // Get popular menu items (all time, from the in-memory popularity tracker)
     public List<PopularItem> getPopularMenuItems(int limit) throws SQLException {
-        List<PopularItem> popularItems = new ArrayList<>();
-        String sql = "SELECT mi.id, mi.name, COUNT(oi.menu_item_id) as order_count, " +
-                    "SUM(oi.quantity) as total_quantity " +
-                    "FROM order_items oi " +
-                    "JOIN menu_items mi ON oi.menu_item_id = mi.id " +
-                    "GROUP BY mi.id, mi.name " +
-                    "ORDER BY total_quantity DESC " +
-                    "LIMIT ?";
-        
-        try (Connection c = DBConnection.getConnection();
-             PreparedStatement ps = c.prepareStatement(sql)) {
-            ps.setInt(1, limit);
-            try (ResultSet rs = ps.executeQuery()) {
-                while (rs.next()) {
-                    popularItems.add(new PopularItem(
-                        rs.getInt("id"),
-                        rs.getString("name"),
-                        rs.getInt("order_count"),
-                        rs.getInt("total_quantity")
-                    ));
-                }
-            }
-        }
-        return popularItems;
+        return PopularityTracker.shared().top(PopularityTracker.Window.ALL_TIME, limit);
+    }
+
+    // Most ordered items today
+    public List<PopularItem> getTodaysPopularMenuItems(int limit) throws SQLException {
+        return PopularityTracker.shared().top(PopularityTracker.Window.TODAY, limit);
+    }
+
+    // Trending now: most ordered items in the last hour
+    public List<PopularItem> getTrendingMenuItems(int limit) throws SQLException {
+        return PopularityTracker.shared().top(PopularityTracker.Window.LAST_HOUR, limit);
     }
 
     public static class DailyReport {
@@ -196,6 +99,9 @@ public class OrderSummary {
             totalOrders = t; 
             revenue = r;
         }
+
+        // Maps (report_date, order_count, revenue)
+        static final Dao.RowMapper<DailyReport> MAPPER = rs -> r -> new DailyReport(r.getDate(1).toLocalDate().toString(), r.getInt(2), r.getDouble(3));
     }
 
     public static class MonthlyReport {
@@ -209,6 +115,17 @@ public class OrderSummary {
         }
     }
 
+    public static class RangeReport {
+        public String from, to;
+        public int totalOrders;
+        public double revenue;
+        public List<DailyReport> days = new ArrayList<>();
+        public RangeReport(String from, String to) {
+            this.from = from;
+            this.to = to;
+        }
+    }
+
     public static class PopularItem {
         public int id, orderCount, totalQuantity;
         public String name;
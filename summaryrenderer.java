@@ -0,0 +1,300 @@
+// OrderSummaryRenderer.java
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Loads order summaries (header + lines) with one joined query and renders them as
+// text, HTML or JSON through templates that are parsed once at class load.
+public class OrderSummaryRenderer {
+
+    public enum Format { TEXT, HTML, JSON }
+
+    private static final int MAX_IDS_PER_QUERY = 500;
+
+    static final String SELECT_SUMMARIES =
+            "SELECT o.id AS order_id, u.name AS user_name, o.time_slot, o.total_amount, o.status, o.created_at, " +
+            "mi.name AS item_name, oi.quantity, oi.price " +
+            "FROM orders o JOIN users u ON o.user_id = u.id " +
+            "LEFT JOIN order_items oi ON oi.order_id = o.id " +
+            "LEFT JOIN menu_items mi ON oi.menu_item_id = mi.id " +
+            "WHERE o.id IN (%s) ORDER BY o.id, oi.id";
+
+    // ---------------- Model ----------------
+
+    public static class SummaryModel {
+        public int orderId;
+        public boolean found;
+        public String userName, timeSlot, status;
+        public long totalPaise, grandTotalPaise;
+        public Timestamp createdAt;
+        public List<SummaryLine> lines = new ArrayList<>();
+
+        SummaryModel(int orderId) {
+            this.orderId = orderId;
+        }
+    }
+
+    public static class SummaryLine {
+        public String name;
+        public int quantity;
+        public long pricePaise, lineTotalPaise;
+
+        SummaryLine(String name, int quantity, long pricePaise) {
+            this.name = name;
+            this.quantity = quantity;
+            this.pricePaise = pricePaise;
+            this.lineTotalPaise = pricePaise * quantity;
+        }
+    }
+
+    // ---------------- Templates ----------------
+
+    private enum Field { ORDER_ID, USER, TIME_SLOT, TOTAL, STATUS, DATE, ITEM, QTY, PRICE, LINE_TOTAL, GRAND_TOTAL }
+
+    private enum Escape { NONE, HTML, JSON }
+
+    // "{{field}}" placeholders split once into literal/field pairs
+    private static final class Template {
+        final String[] literals; // literals[i] precedes fields[i]; one extra trailing literal
+        final Field[] fields;
+
+        Template(String source) {
+            List<String> lits = new ArrayList<>();
+            List<Field> flds = new ArrayList<>();
+            int pos = 0;
+            while (true) {
+                int open = source.indexOf("{{", pos);
+                if (open < 0) break;
+                int close = source.indexOf("}}", open);
+                lits.add(source.substring(pos, open));
+                flds.add(Field.valueOf(source.substring(open + 2, close)));
+                pos = close + 2;
+            }
+            lits.add(source.substring(pos));
+            this.literals = lits.toArray(new String[0]);
+            this.fields = flds.toArray(new Field[0]);
+        }
+
+        void render(StringBuilder out, SummaryModel order, SummaryLine line, Escape escape) {
+            for (int i = 0; i < fields.length; i++) {
+                out.append(literals[i]);
+                appendField(out, fields[i], order, line, escape);
+            }
+            out.append(literals[fields.length]);
+        }
+    }
+
+    private static final class Layout {
+        final Template open, details, itemsOpen, line, close;
+        final String separator;
+        final Escape escape;
+
+        Layout(String open, String details, String itemsOpen, String line, String separator, String close, Escape escape) {
+            this.open = new Template(open);
+            this.details = new Template(details);
+            this.itemsOpen = new Template(itemsOpen);
+            this.line = new Template(line);
+            this.separator = separator;
+            this.close = new Template(close);
+            this.escape = escape;
+        }
+    }
+
+    private static final Layout TEXT = new Layout(
+            "Order {{ORDER_ID}} Summary:\n========================================\n",
+            "User: {{USER}}\nTime Slot: {{TIME_SLOT}}\nTotal Amount: ₹{{TOTAL}}\nStatus: {{STATUS}}\nOrder Date: {{DATE}}\n",
+            "\nItems:\n------\n",
+            "- {{ITEM}} x{{QTY}} @ ₹{{PRICE}} = ₹{{LINE_TOTAL}}\n",
+            "",
+            "\nGrand Total: ₹{{GRAND_TOTAL}}\n",
+            Escape.NONE);
+
+    private static final Layout HTML = new Layout(
+            "<div class='order-summary'><h3>Order #{{ORDER_ID}} Summary</h3>",
+            "<div class='order-details'>" +
+            "<p><strong>User:</strong> {{USER}}</p>" +
+            "<p><strong>Time Slot:</strong> {{TIME_SLOT}}</p>" +
+            "<p><strong>Total Amount:</strong> ₹{{TOTAL}}</p>" +
+            "<p><strong>Status:</strong> {{STATUS}}</p>" +
+            "<p><strong>Order Date:</strong> {{DATE}}</p>" +
+            "</div>",
+            "<div class='order-items'><h4>Items:</h4>" +
+            "<table border='1' style='width:100%; border-collapse: collapse;'>" +
+            "<tr><th>Item</th><th>Quantity</th><th>Price</th><th>Total</th></tr>",
+            "<tr><td>{{ITEM}}</td><td>{{QTY}}</td><td>₹{{PRICE}}</td><td>₹{{LINE_TOTAL}}</td></tr>",
+            "",
+            "<tr style='font-weight: bold;'><td colspan='3' style='text-align: right;'>Grand Total:</td>" +
+            "<td>₹{{GRAND_TOTAL}}</td></tr></table></div></div>",
+            Escape.HTML);
+
+    private static final Layout JSON = new Layout(
+            "{\"orderId\":{{ORDER_ID}}",
+            ",\"user\":\"{{USER}}\",\"timeSlot\":\"{{TIME_SLOT}}\",\"totalAmount\":{{TOTAL}}" +
+            ",\"status\":\"{{STATUS}}\",\"orderDate\":\"{{DATE}}\"",
+            ",\"items\":[",
+            "{\"name\":\"{{ITEM}}\",\"quantity\":{{QTY}},\"price\":{{PRICE}},\"total\":{{LINE_TOTAL}}}",
+            ",",
+            "],\"grandTotal\":{{GRAND_TOTAL}}}",
+            Escape.JSON);
+
+    // ---------------- Rendering ----------------
+
+    public String render(int orderId, Format format) throws SQLException {
+        SummaryModel model = load(List.of(orderId)).get(orderId);
+        StringBuilder out = new StringBuilder(512);
+        render(out, model == null ? new SummaryModel(orderId) : model, format);
+        return out.toString();
+    }
+
+    // Summaries for many orders (e.g. the kitchen display), keyed by order id in request order.
+    // Unknown ids are left out.
+    public Map<Integer, String> renderAll(List<Integer> orderIds, Format format) throws SQLException {
+        Map<Integer, SummaryModel> models = load(orderIds);
+        Map<Integer, String> result = new LinkedHashMap<>();
+        StringBuilder out = new StringBuilder(512);
+        for (Integer id : orderIds) {
+            SummaryModel model = models.get(id);
+            if (model == null || result.containsKey(id)) continue;
+            out.setLength(0);
+            render(out, model, format);
+            result.put(id, out.toString());
+        }
+        return result;
+    }
+
+    public void render(StringBuilder out, SummaryModel model, Format format) {
+        Layout layout = format == Format.HTML ? HTML : format == Format.JSON ? JSON : TEXT;
+        layout.open.render(out, model, null, layout.escape);
+        if (model.found) layout.details.render(out, model, null, layout.escape);
+        layout.itemsOpen.render(out, model, null, layout.escape);
+        for (int i = 0; i < model.lines.size(); i++) {
+            if (i > 0) out.append(layout.separator);
+            layout.line.render(out, model, model.lines.get(i), layout.escape);
+        }
+        layout.close.render(out, model, null, layout.escape);
+    }
+
+    // ---------------- Loading ----------------
+
+    // One query per MAX_IDS_PER_QUERY ids: header columns repeat on every line row
+    public Map<Integer, SummaryModel> load(List<Integer> orderIds) throws SQLException {
+        Map<Integer, SummaryModel> models = new LinkedHashMap<>();
+        if (orderIds.isEmpty()) return models;
+        try (Connection c = Dao.connection()) {
+            for (int from = 0; from < orderIds.size(); from += MAX_IDS_PER_QUERY) {
+                List<Integer> chunk = orderIds.subList(from, Math.min(orderIds.size(), from + MAX_IDS_PER_QUERY));
+                StringBuilder placeholders = new StringBuilder(chunk.size() * 3);
+                for (int i = 0; i < chunk.size(); i++) placeholders.append(i == 0 ? "?" : ", ?");
+                String sql = String.format(SELECT_SUMMARIES, placeholders);
+                try (PreparedStatement ps = c.prepareStatement(sql)) {
+                    for (int i = 0; i < chunk.size(); i++) ps.setInt(i + 1, chunk.get(i));
+                    Dao.timed(sql, () -> {
+                        try (ResultSet rs = ps.executeQuery()) {
+                            readRows(rs, models);
+                        }
+                        return null;
+                    });
+                }
+            }
+        }
+        return models;
+    }
+
+    private static void readRows(ResultSet rs, Map<Integer, SummaryModel> models) throws SQLException {
+        while (rs.next()) {
+            int orderId = rs.getInt(1);
+            SummaryModel model = models.get(orderId);
+            if (model == null) {
+                model = new SummaryModel(orderId);
+                model.found = true;
+                model.userName = rs.getString(2);
+                model.timeSlot = rs.getString(3);
+                model.totalPaise = toPaise(rs.getDouble(4));
+                model.status = rs.getString(5);
+                model.createdAt = rs.getTimestamp(6);
+                models.put(orderId, model);
+            }
+            String itemName = rs.getString(7);
+            int quantity = rs.getInt(8);
+            if (rs.wasNull()) continue; // order without lines (LEFT JOIN)
+            SummaryLine line = new SummaryLine(itemName, quantity, toPaise(rs.getDouble(9)));
+            model.lines.add(line);
+            model.grandTotalPaise += line.lineTotalPaise;
+        }
+    }
+
+    private static long toPaise(double amount) {
+        return Math.round(amount * 100);
+    }
+
+    // ---------------- Field output ----------------
+
+    private static void appendField(StringBuilder out, Field field, SummaryModel order, SummaryLine line, Escape escape) {
+        switch (field) {
+            case ORDER_ID: out.append(order.orderId); break;
+            case USER: appendText(out, order.userName, escape); break;
+            case TIME_SLOT: appendText(out, order.timeSlot, escape); break;
+            case TOTAL: appendMoney(out, order.totalPaise); break;
+            case STATUS: appendText(out, order.status, escape); break;
+            case DATE: appendText(out, order.createdAt == null ? null : order.createdAt.toString(), escape); break;
+            case ITEM: appendText(out, line.name, escape); break;
+            case QTY: out.append(line.quantity); break;
+            case PRICE: appendMoney(out, line.pricePaise); break;
+            case LINE_TOTAL: appendMoney(out, line.lineTotalPaise); break;
+            case GRAND_TOTAL: appendMoney(out, order.grandTotalPaise); break;
+            default: break;
+        }
+    }
+
+    // Same output as String.format("%.2f") for two-decimal amounts, without the Formatter
+    static void appendMoney(StringBuilder out, long paise) {
+        if (paise < 0) {
+            out.append('-');
+            paise = -paise;
+        }
+        long fraction = paise % 100;
+        out.append(paise / 100).append('.');
+        if (fraction < 10) out.append('0');
+        out.append(fraction);
+    }
+
+    private static void appendText(StringBuilder out, String value, Escape escape) {
+        if (value == null) {
+            if (escape != Escape.JSON) out.append("null");
+            return;
+        }
+        if (escape == Escape.NONE) {
+            out.append(value);
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (escape == Escape.HTML) {
+                switch (ch) {
+                    case '<': out.append("&lt;"); break;
+                    case '>': out.append("&gt;"); break;
+                    case '&': out.append("&amp;"); break;
+                    case '\'': out.append("&#39;"); break;
+                    case '"': out.append("&quot;"); break;
+                    default: out.append(ch);
+                }
+            } else {
+                switch (ch) {
+                    case '"': out.append("\\\""); break;
+                    case '\\': out.append("\\\\"); break;
+                    case '\n': out.append("\\n"); break;
+                    case '\r': out.append("\\r"); break;
+                    case '\t': out.append("\\t"); break;
+                    default:
+                        if (ch < 0x20) {
+                            out.append(String.format("\\u%04x", (int) ch));
+                        } else {
+                            out.append(ch);
+                        }
+                }
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 import java.sql.*;
-import java.security.MessageDigest;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class User {
 
@@ -11,19 +12,36 @@ public class User {
 
     private static final double DEFAULT_WALLET = 0.0;
 
-    public static boolean register(String name, String email, String password) {
-        String sql = "INSERT INTO users (name, email, password, wallet) VALUES (?, ?, ?, ?)";
-        try (Connection c = DBConnection.getConnection();
-             PreparedStatement ps = c.prepareStatement(sql)) {
+    // Writes upgraded hashes, so the JDBC call never occupies a password-hasher thread
+    private static final ExecutorService rehashWriter = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "password-rehash-writer");
+        t.setDaemon(true);
+        return t;
+    });
 
-            if (c == null) return false;
-
-            ps.setString(1, name.trim());
-            ps.setString(2, email.trim().toLowerCase());
-            ps.setString(3, sha256(password.trim()));
-            ps.setDouble(4, DEFAULT_WALLET);
+    // A users row as read for login: (id, name, email, wallet, password)
+    private record StoredLogin(User user, String passwordHash) {
+        static final Dao.RowMapper<StoredLogin> MAPPER = rs -> r -> {
+            User u = new User();
+            u.id = r.getInt(1);
+            u.name = r.getString(2);
+            u.email = r.getString(3);
+            u.wallet = r.getDouble(4);
+            return new StoredLogin(u, r.getString(5));
+        };
+    }
 
-            int rows = ps.executeUpdate();
+    public static boolean register(String name, String email, String password) {
+        String sql = "INSERT INTO users (name, email, password, wallet) VALUES (?, ?, ?, ?)";
+        try {
+            // Hash before borrowing a connection: key stretching is slow
+            String hash = Passwords.shared().hash(password.trim());
+            int rows = Dao.update(sql, ps -> {
+                ps.setString(1, name.trim());
+                ps.setString(2, email.trim().toLowerCase());
+                ps.setString(3, hash);
+                ps.setDouble(4, DEFAULT_WALLET);
+            });
             return rows > 0;
 
         } catch (SQLException e) {
@@ -33,27 +51,24 @@ public class User {
         }
     }
 
+    // Password is the plain text as typed; hashing runs on the Passwords pool
     public static User login(String email, String password) {
-        String sql = "SELECT id, name, email, wallet FROM users WHERE email=? AND password=?";
-        try (Connection c = DBConnection.getConnection();
-             PreparedStatement ps = c.prepareStatement(sql)) {
-
-            if (c == null) return null;
-
-            ps.setString(1, email.trim().toLowerCase());
-            ps.setString(2, sha256(password.trim()));
-
-            try (ResultSet rs = ps.executeQuery()) {
-                if (rs.next()) {
-                    User u = new User();
-                    u.id = rs.getInt("id");
-                    u.name = rs.getString("name");
-                    u.email = rs.getString("email");
-                    u.wallet = rs.getDouble("wallet");
-                    return u;
-                }
+        String sql = "SELECT id, name, email, wallet, password FROM users WHERE email=?";
+        try {
+            StoredLogin row = Dao.queryOne(sql, ps -> ps.setString(1, email.trim().toLowerCase()), StoredLogin.MAPPER);
+            // The connection is back in the pool before the (slow) password check. Unknown
+            // emails get a check against a decoy hash so they take just as long.
+            if (row == null) {
+                Passwords.shared().checkDecoy(password.trim());
                 return null;
             }
+            if (!Passwords.shared().matches(password.trim(), row.passwordHash())) return null;
+            User u = row.user();
+            // users.wallet can trail the in-memory balance by one ledger batch
+            Double live = Wallet.shared().cachedBalance(u.id);
+            if (live != null) u.wallet = live;
+            if (Passwords.shared().needsRehash(row.passwordHash())) upgradePassword(u.id, password.trim(), row.passwordHash());
+            return u;
 
         } catch (SQLException e) {
             e.printStackTrace();
@@ -61,15 +76,20 @@ public class User {
         }
     }
 
-    private static String sha256(String input) {
-        try {
-            MessageDigest md = MessageDigest.getInstance("SHA-256");
-            byte[] b = md.digest(input.getBytes("UTF-8"));
-            StringBuilder sb = new StringBuilder();
-            for (byte x : b) sb.append(String.format("%02x", x));
-            return sb.toString();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+    // Replace a legacy/weaker hash in the background once the password is known to be right.
+    // The "AND password=?" guard skips the write if the password changed meanwhile.
+    private static void upgradePassword(int userId, String password, String oldHash) {
+        Passwords.shared().hashAsync(password).thenAcceptAsync(newHash -> {
+            String sql = "UPDATE users SET password=? WHERE id=? AND password=?";
+            try {
+                Dao.update(sql, ps -> {
+                    ps.setString(1, newHash);
+                    ps.setInt(2, userId);
+                    ps.setString(3, oldHash);
+                });
+            } catch (SQLException e) {
+                System.err.println("Password rehash failed for user " + userId + ": " + e.getMessage());
+            }
+        }, rehashWriter).exceptionally(e -> null); // pool busy: retried on the next login
     }
 }
@@ -0,0 +1,248 @@
+// Wallet.java
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Wallet balances with an append-only ledger (wallet_ledger).
+// Each account keeps, in paise, the spendable balance as a lock-free AtomicLong, loaded
+// from users.wallet on first use; a debit that would overdraw it fails its CAS check and
+// never reaches the database. Debits take money out of it when accepted, credits add to
+// it only once committed, so a debit is never approved against money that a failed batch
+// could take back. Accepted entries are group-committed by a single writer thread: one
+// transaction per batch inserts the ledger rows and applies one UPDATE per user.
+// Assumes this process is the only writer of users.wallet.
+public class Wallet {
+
+    private static final int BATCH_SIZE = Config.getInt("WALLET_BATCH_SIZE", 500);
+    private static final long BATCH_WINDOW_MS = Config.getLong("WALLET_BATCH_WINDOW_MS", 5);
+    private static final int QUEUE_CAPACITY = Config.getInt("WALLET_QUEUE", 10_000);
+
+    private static final Wallet shared = new Wallet();
+
+    private static final int MAX_REASON_LENGTH = 50, MAX_REFERENCE_LENGTH = 100; // wallet_ledger columns
+
+    private final Map<Integer, Account> accounts = new ConcurrentHashMap<>();
+    private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+    private volatile Thread writer;
+
+    public static Wallet shared() {
+        return shared;
+    }
+
+    private static final class Account {
+        final AtomicLong spendable; // committed balance, less debits still waiting to commit
+        long committed;             // as in users.wallet; guarded by the Wallet's commit lock
+
+        Account(long paise) {
+            this.spendable = new AtomicLong(paise);
+            this.committed = paise;
+        }
+    }
+
+    public static class Entry {
+        public final int userId;
+        public final long amountPaise;       // positive = credit, negative = debit
+        public long balanceAfterPaise;       // set when the entry is committed
+        public final String reason, reference;
+        final CompletableFuture<Entry> committed = new CompletableFuture<>();
+
+        Entry(int userId, long amountPaise, String reason, String reference) {
+            this.userId = userId;
+            this.amountPaise = amountPaise;
+            this.reason = reason;
+            this.reference = reference;
+        }
+
+        public double balanceAfter() {
+            return balanceAfterPaise / 100.0;
+        }
+    }
+
+    // Spendable balance: committed money less pending debits (pending credits not yet included)
+    public double balance(int userId) throws SQLException {
+        return account(userId).spendable.get() / 100.0;
+    }
+
+    // Cached spendable balance if this user's account is loaded, otherwise null
+    public Double cachedBalance(int userId) {
+        Account account = accounts.get(userId);
+        return account == null ? null : account.spendable.get() / 100.0;
+    }
+
+    // Take money out. Throws IllegalStateException immediately if it would overdraw;
+    // the returned future completes once the ledger entry is committed.
+    public CompletableFuture<Entry> debit(int userId, double amount, String reason, String reference) throws SQLException {
+        long paise = toPaise(amount);
+        validate(reason, reference);
+        Account account = account(userId);
+        while (true) {
+            long current = account.spendable.get();
+            if (current < paise) throw new IllegalStateException("Insufficient wallet balance");
+            if (account.spendable.compareAndSet(current, current - paise)) break;
+        }
+        return enqueue(account, new Entry(userId, -paise, reason, reference));
+    }
+
+    // Add money; it becomes spendable when the ledger entry commits
+    public CompletableFuture<Entry> credit(int userId, double amount, String reason, String reference) throws SQLException {
+        long paise = toPaise(amount);
+        validate(reason, reference);
+        return enqueue(account(userId), new Entry(userId, paise, reason, reference));
+    }
+
+    private static long toPaise(double amount) {
+        long paise = Math.round(amount * 100);
+        if (paise <= 0) throw new IllegalArgumentException("Amount must be positive");
+        return paise;
+    }
+
+    // Checked before anything is queued: one bad row would fail the whole batch for every user in it
+    private static void validate(String reason, String reference) {
+        if (reason == null || reason.isBlank() || reason.length() > MAX_REASON_LENGTH) {
+            throw new IllegalArgumentException("Reason must be 1-" + MAX_REASON_LENGTH + " characters");
+        }
+        if (reference != null && reference.length() > MAX_REFERENCE_LENGTH) {
+            throw new IllegalArgumentException("Reference must be at most " + MAX_REFERENCE_LENGTH + " characters");
+        }
+    }
+
+    private CompletableFuture<Entry> enqueue(Account account, Entry entry) {
+        ensureWriter();
+        if (!queue.offer(entry)) {
+            release(account, entry); // we could not record it
+            throw new IllegalStateException("Wallet is busy, try again");
+        }
+        return entry.committed;
+    }
+
+    // An entry that will not be committed: give a debit's money back. Credits were never
+    // spendable, so nothing that depended on them has to be undone.
+    private static void release(Account account, Entry entry) {
+        if (entry.amountPaise < 0) account.spendable.addAndGet(-entry.amountPaise);
+    }
+
+    private Account account(int userId) throws SQLException {
+        Account account = accounts.get(userId);
+        if (account != null) return account;
+        Long paise = Dao.queryOne("SELECT wallet FROM users WHERE id = ?", ps -> ps.setInt(1, userId),
+                rs -> r -> Math.round(r.getDouble(1) * 100));
+        if (paise == null) throw new IllegalArgumentException("Unknown user " + userId);
+        Account loaded = new Account(paise);
+        account = accounts.putIfAbsent(userId, loaded);
+        return account == null ? loaded : account;
+    }
+
+    // ---------------- Group commit ----------------
+
+    private void ensureWriter() {
+        if (writer != null) return;
+        synchronized (this) {
+            if (writer != null) return;
+            Thread t = new Thread(this::writeLoop, "wallet-ledger-writer");
+            t.setDaemon(true);
+            t.start();
+            writer = t;
+            Runtime.getRuntime().addShutdownHook(new Thread(this::drain, "wallet-ledger-drain"));
+        }
+    }
+
+    private void writeLoop() {
+        List<Entry> batch = new ArrayList<>(BATCH_SIZE);
+        while (true) {
+            try {
+                Entry first = queue.take();
+                batch.add(first);
+                // Give concurrent writers a short window to join this commit
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(BATCH_WINDOW_MS);
+                while (batch.size() < BATCH_SIZE) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) break;
+                    Entry next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                    queue.drainTo(batch, BATCH_SIZE - batch.size());
+                }
+                commit(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    // Flush whatever is queued (used on shutdown)
+    private void drain() {
+        List<Entry> batch = new ArrayList<>(BATCH_SIZE);
+        while (queue.drainTo(batch, BATCH_SIZE) > 0) {
+            commit(batch);
+            batch.clear();
+        }
+    }
+
+    // Synchronized: the shutdown drain may run while the writer finishes its last batch
+    private synchronized void commit(List<Entry> batch) {
+        String insert = "INSERT INTO wallet_ledger (user_id, amount, balance_after, reason, reference) VALUES (?, ?, ?, ?, ?)";
+        String update = "UPDATE users SET wallet = wallet + ? WHERE id = ?";
+        // Running balances in commit order, from the committed balance, so they stay right
+        // even when an earlier batch failed
+        Map<Integer, Long> running = new HashMap<>();
+        Map<Integer, Long> netByUser = new HashMap<>();
+        for (Entry e : batch) {
+            long before = running.computeIfAbsent(e.userId, id -> accounts.get(id).committed);
+            running.put(e.userId, before + e.amountPaise);
+            e.balanceAfterPaise = before + e.amountPaise;
+            netByUser.merge(e.userId, e.amountPaise, Long::sum);
+        }
+
+        try (Connection c = Dao.connection()) {
+            c.setAutoCommit(false);
+            try (PreparedStatement ins = c.prepareStatement(insert);
+                 PreparedStatement upd = c.prepareStatement(update)) {
+                for (Entry e : batch) {
+                    ins.setInt(1, e.userId);
+                    ins.setDouble(2, e.amountPaise / 100.0);
+                    ins.setDouble(3, e.balanceAfterPaise / 100.0);
+                    ins.setString(4, e.reason);
+                    ins.setString(5, e.reference);
+                    ins.addBatch();
+                }
+                ins.executeBatch();
+                for (Map.Entry<Integer, Long> net : netByUser.entrySet()) {
+                    upd.setDouble(1, net.getValue() / 100.0);
+                    upd.setInt(2, net.getKey());
+                    upd.addBatch();
+                }
+                upd.executeBatch();
+                c.commit();
+            } catch (SQLException | RuntimeException e) {
+                c.rollback();
+                throw e;
+            }
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("Wallet ledger commit failed for " + batch.size() + " entries: " + e.getMessage());
+            // Nothing was written: give debited money back and fail the callers
+            for (Entry entry : batch) {
+                release(accounts.get(entry.userId), entry);
+                entry.committed.completeExceptionally(e);
+            }
+            return;
+        }
+        for (Map.Entry<Integer, Long> r : running.entrySet()) {
+            accounts.get(r.getKey()).committed = r.getValue();
+        }
+        for (Entry e : batch) {
+            if (e.amountPaise > 0) accounts.get(e.userId).spendable.addAndGet(e.amountPaise);
+            e.committed.complete(e);
+        }
+    }
+}